@@ -0,0 +1,505 @@
+package org.codespeak.distribution.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.codespeak.distribution.client.Settings.SettingFields;
+import org.codespeak.distribution.client.data.Catalog;
+import org.codespeak.distribution.client.data.Dependency;
+import org.codespeak.distribution.client.data.FileInfo;
+import org.codespeak.distribution.client.data.Program;
+import org.codespeak.distribution.client.handler.BackendHandler;
+import org.codespeak.distribution.client.handler.CatalogLoader;
+import org.codespeak.distribution.client.handler.DataHandler;
+import org.codespeak.distribution.client.handler.DataJournal;
+import org.codespeak.distribution.client.handler.transport.URLConnectionTransport;
+import org.codespeak.distribution.client.objects.ClientException;
+import org.codespeak.distribution.client.objects.FileTransaction;
+import org.codespeak.distribution.client.objects.InstanceLock;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * The entry point of the client when it is run without a user interface. The
+ * JavaFX toolkit is never started, so the client can be driven from scripts
+ * on machines without a display. Operations on several programs run at the
+ * same time, and the results are printed as a single JSON object.
+ * <p>
+ * Usage:
+ * <pre>
+ * list
+ * install &lt;slug&gt;...
+ * update --all | update &lt;slug&gt;...
+ * repair [--verify-only] [--deep] [&lt;slug&gt;...]
+ * </pre>
+ * The number of programs worked on at the same time can be set with
+ * --jobs &lt;count&gt;. The exit code is 0 if every operation succeeded, 1 if
+ * any operation failed, 2 if the arguments are invalid, 3 if the
+ * distribution system could not be reached and 4 if another instance of the
+ * client is running
+ *
+ * @author Vector
+ */
+public class CommandLine {
+
+    private static final int EXIT_SUCCESS = 0;
+    private static final int EXIT_FAILURE = 1;
+    private static final int EXIT_USAGE = 2;
+    private static final int EXIT_UNAVAILABLE = 3;
+    private static final int EXIT_LOCKED = 4;
+
+    private static final String STATUS_OK = "ok";
+    private static final String STATUS_FAILED = "failed";
+    private static final String STATUS_SKIPPED = "skipped";
+    private static final String STATUS_INVALID = "invalid";
+
+    private static final String USAGE = "Usage: list | install <slug>... | update --all | update <slug>... "
+                                        + "| repair [--verify-only] [--deep] [<slug>...] [--jobs <count>]";
+
+    // Changes to the data of the client are made one at a time, as they are
+    // on the JavaFX application thread when the user interface is used
+    private static final Object dataLock = new Object();
+
+    private static String command = null;
+    // A program named more than once is only worked on once
+    private static final Set<String> slugs = new LinkedHashSet<String>();
+    private static boolean all = false;
+    private static boolean verifyOnly = false;
+    private static boolean deepVerify = false;
+    private static int jobs = 0;
+    private static boolean online = true;
+
+    private static boolean parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+
+            switch (arg) {
+                case "--all":
+                    all = true;
+
+                    break;
+                case "--verify-only":
+                    verifyOnly = true;
+
+                    break;
+                case "--deep":
+                    deepVerify = true;
+
+                    break;
+                case "--jobs":
+                    if (i + 1 >= args.length) {
+                        return false;
+                    }
+
+                    try {
+                        jobs = Integer.parseInt(args[++i]);
+                    } catch (NumberFormatException ex) {
+                        return false;
+                    }
+
+                    break;
+                default:
+                    if (arg.startsWith("--")) {
+                        return false;
+                    } else if (command == null) {
+                        command = arg;
+                    } else {
+                        slugs.add(arg);
+                    }
+            }
+        }
+
+        if (command == null) {
+            return false;
+        }
+
+        switch (command) {
+            case "list":
+                return slugs.isEmpty();
+            case "install":
+                return !slugs.isEmpty();
+            case "update":
+                return (all != !slugs.isEmpty());
+            case "repair":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void loadCatalog() {
+        try {
+            Catalog catalog = CatalogLoader.fetch();
+
+            DataHandler.setCatalog(catalog);
+            CatalogLoader.saveCachedCatalog(catalog);
+        } catch (ClientException ex) {
+            Catalog cachedCatalog = CatalogLoader.loadCachedCatalog();
+
+            if (cachedCatalog != null) {
+                DataHandler.setCatalog(cachedCatalog);
+            }
+
+            online = false;
+        }
+    }
+
+    private static JSONObject createResult(String slug, Program program, String status, String message) {
+        JSONObject result = new JSONObject();
+
+        result.put("slug", slug);
+        result.put("status", status);
+
+        if (program != null) {
+            result.put("name", program.getName());
+            result.put("version", program.getVersion());
+        }
+
+        if (message != null) {
+            result.put("message", message);
+        }
+
+        return result;
+    }
+
+    private static String getErrorMessage(Throwable throwable) {
+        if (throwable instanceof ClientException) {
+            ClientException ex = (ClientException) throwable;
+
+            return ex.getTitle() + " " + ex.getMessage();
+        }
+
+        return (throwable.getMessage() != null ? throwable.getMessage() : throwable.toString());
+    }
+
+    private static Program findProgram(String slug) {
+        for (Program program : DataHandler.getPrograms(null)) {
+            if (program.getSlug().equals(slug)) {
+                return program;
+            }
+        }
+
+        return null;
+    }
+
+    private static List<Program> getInstalledPrograms() {
+        List<Program> installedPrograms = new ArrayList<Program>();
+
+        for (Program program : DataHandler.getPrograms(null)) {
+            if (program.isInstalled()) {
+                installedPrograms.add(program);
+            }
+        }
+
+        return installedPrograms;
+    }
+
+    private static JSONArray getDependencyNames(Program program) {
+        JSONArray names = new JSONArray();
+
+        for (Dependency dependency : program.getDependencies(true).keySet()) {
+            names.put(dependency.getName());
+        }
+
+        return names;
+    }
+
+    /**
+     * Runs the operations on a pool of threads and gets their results in the
+     * order the operations were given. Operations that have already finished
+     * are given as a future of their result
+     */
+    private static JSONArray runAll(List<Callable<JSONObject>> operations) {
+        int concurrentJobs = (jobs > 0 ? jobs : Configuration.getSettings().<Integer>getValue(SettingFields.CONCURRENT_JOBS));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, concurrentJobs));
+        List<Future<JSONObject>> futures = new ArrayList<Future<JSONObject>>();
+        JSONArray results = new JSONArray();
+
+        try {
+            for (Callable<JSONObject> operation : operations) {
+                futures.add(executor.submit(operation));
+            }
+
+            for (Future<JSONObject> future : futures) {
+                try {
+                    results.put(future.get());
+                } catch (ExecutionException ex) {
+                    results.put(createResult(null, null, STATUS_FAILED, getErrorMessage(ex.getCause())));
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return results;
+    }
+
+    private static Callable<JSONObject> immediate(JSONObject result) {
+        return () -> result;
+    }
+
+    private static JSONArray list() {
+        List<Program> outdatedPrograms = DataHandler.getOutdatedPrograms();
+        JSONArray results = new JSONArray();
+
+        for (Program program : DataHandler.getPrograms(null)) {
+            Program latestProgram = DataHandler.getProgram(program.getId(), false);
+            JSONObject result = new JSONObject();
+
+            result.put("slug", program.getSlug());
+            result.put("name", program.getName());
+            result.put("installed", program.isInstalled());
+
+            if (latestProgram != null) {
+                result.put("latest_version", latestProgram.getVersion());
+            }
+
+            if (program.isInstalled()) {
+                result.put("installed_version", program.getVersion());
+                result.put("update_available", outdatedPrograms.contains(program));
+                result.put("detached", program.isDetached());
+            }
+
+            results.put(result);
+        }
+
+        return results;
+    }
+
+    private static Callable<JSONObject> install(String slug) {
+        Program program = findProgram(slug);
+
+        if (program == null) {
+            return immediate(createResult(slug, null, STATUS_FAILED, "Program not found."));
+        } else if (program.isInstalled()) {
+            return immediate(createResult(slug, program, STATUS_SKIPPED, "Program is already installed."));
+        }
+
+        return () -> {
+            try {
+                program.install();
+            } catch (IOException | ClientException ex) {
+                return createResult(slug, program, STATUS_FAILED, getErrorMessage(ex));
+            }
+
+            synchronized (dataLock) {
+                DataHandler.finishInstallProgram(program);
+            }
+
+            JSONObject result = createResult(slug, program, STATUS_OK, null);
+            result.put("dependencies", getDependencyNames(program));
+
+            return result;
+        };
+    }
+
+    private static Callable<JSONObject> update(String slug, Program installedProgram, List<Program> outdatedPrograms) {
+        if (installedProgram == null || !installedProgram.isInstalled()) {
+            return immediate(createResult(slug, null, STATUS_FAILED, "Program is not installed."));
+        } else if (!outdatedPrograms.contains(installedProgram)) {
+            return immediate(createResult(slug, installedProgram, STATUS_SKIPPED, "Program is up to date."));
+        }
+
+        Program program = DataHandler.getProgram(installedProgram.getId(), false);
+        boolean newDependencies = installedProgram.hasNewDependencies(program.getDependencies(), true);
+
+        return () -> {
+            try {
+                installedProgram.update(program);
+            } catch (IOException | ClientException ex) {
+                return createResult(slug, installedProgram, STATUS_FAILED, getErrorMessage(ex));
+            }
+
+            synchronized (dataLock) {
+                DataHandler.finishUpdateProgram(installedProgram, program);
+            }
+
+            JSONObject result = createResult(slug, installedProgram, STATUS_OK, null);
+
+            if (newDependencies) {
+                result.put("dependencies", getDependencyNames(installedProgram));
+            }
+
+            return result;
+        };
+    }
+
+    private static Callable<JSONObject> repair(String slug, Program installedProgram) {
+        if (installedProgram == null || !installedProgram.isInstalled()) {
+            return immediate(createResult(slug, null, STATUS_FAILED, "Program is not installed."));
+        } else if (installedProgram.isDetached()) {
+            return immediate(createResult(slug, installedProgram, STATUS_FAILED, "This program is no longer available."));
+        }
+
+        Program program = DataHandler.getProgram(installedProgram.getId(), false);
+
+        if (!verifyOnly && !installedProgram.getReleaseTime().equals(program.getReleaseTime())) {
+            return immediate(createResult(slug, installedProgram, STATUS_FAILED,
+                                          "This program must be at the latest version before it can be repaired."));
+        }
+
+        return () -> {
+            try {
+                if (!verifyOnly) {
+                    installedProgram.repair(deepVerify, null);
+
+                    return createResult(slug, installedProgram, STATUS_OK, null);
+                }
+
+                List<FileInfo> mismatchedFiles = installedProgram.verify(deepVerify);
+                JSONArray paths = new JSONArray();
+
+                for (FileInfo file : mismatchedFiles) {
+                    paths.put(file.getPathAndName());
+                }
+
+                JSONObject result = createResult(slug, installedProgram, mismatchedFiles.isEmpty() ? STATUS_OK : STATUS_INVALID, null);
+                result.put("mismatched_files", paths);
+
+                return result;
+            } catch (IOException | ClientException ex) {
+                return createResult(slug, installedProgram, STATUS_FAILED, getErrorMessage(ex));
+            }
+        };
+    }
+
+    private static JSONArray runCommand() {
+        List<Callable<JSONObject>> operations = new ArrayList<Callable<JSONObject>>();
+
+        switch (command) {
+            case "list":
+                return list();
+            case "install":
+                for (String slug : slugs) {
+                    operations.add(install(slug));
+                }
+
+                break;
+            case "update":
+                List<Program> outdatedPrograms = DataHandler.getOutdatedPrograms();
+
+                if (all) {
+                    for (Program installedProgram : outdatedPrograms) {
+                        operations.add(update(installedProgram.getSlug(), installedProgram, outdatedPrograms));
+                    }
+                } else {
+                    for (String slug : slugs) {
+                        operations.add(update(slug, findProgram(slug), outdatedPrograms));
+                    }
+                }
+
+                break;
+            case "repair":
+                if (slugs.isEmpty()) {
+                    for (Program installedProgram : getInstalledPrograms()) {
+                        operations.add(repair(installedProgram.getSlug(), installedProgram));
+                    }
+                } else {
+                    for (String slug : slugs) {
+                        operations.add(repair(slug, findProgram(slug)));
+                    }
+                }
+
+                break;
+        }
+
+        return runAll(operations);
+    }
+
+    private static int countStatus(JSONArray results, String status) {
+        int count = 0;
+
+        for (int i = 0; i < results.length(); i++) {
+            if (status.equals(results.getJSONObject(i).optString("status"))) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static void exit(JSONObject output, int exitCode) {
+        output.put("exit_code", exitCode);
+
+        System.out.println(output.toString());
+        System.exit(exitCode);
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        URLConnectionTransport.configureConnectionPool();
+
+        JSONObject output = new JSONObject();
+
+        if (!parseArguments(args)) {
+            output.put("error", USAGE);
+
+            exit(output, EXIT_USAGE);
+        }
+
+        output.put("command", command);
+
+        if (!InstanceLock.acquire()) {
+            output.put("error", "Another instance of the client is already running.");
+
+            exit(output, EXIT_LOCKED);
+        }
+
+        FileTransaction.recoverAll();
+        BackendHandler.getResponseCache().load(new File(Configuration.RESPONSE_CACHE_FILE));
+
+        loadCatalog();
+
+        output.put("online", online);
+
+        // Listing works from the saved catalog, but every other command needs
+        // the distribution system
+        if (!online && !command.equals("list")) {
+            output.put("error", "Unable to reach the distribution system.");
+
+            exit(output, EXIT_UNAVAILABLE);
+        }
+
+        File programsFolder = new File(Configuration.PROGRAMS_FOLDER);
+
+        if (!programsFolder.exists()) {
+            programsFolder.mkdir();
+        }
+
+        DataJournal.load();
+
+        JSONArray results = runCommand();
+
+        DataJournal.compact();
+        DataJournal.close();
+        BackendHandler.getResponseCache().save(new File(Configuration.RESPONSE_CACHE_FILE));
+        InstanceLock.release();
+
+        output.put("results", results);
+
+        if (command.equals("list")) {
+            exit(output, EXIT_SUCCESS);
+        }
+
+        int failed = countStatus(results, STATUS_FAILED) + countStatus(results, STATUS_INVALID);
+
+        output.put("succeeded", countStatus(results, STATUS_OK));
+        output.put("failed", failed);
+        output.put("skipped", countStatus(results, STATUS_SKIPPED));
+
+        exit(output, failed > 0 ? EXIT_FAILURE : EXIT_SUCCESS);
+    }
+
+}
@@ -23,8 +23,16 @@ public class Configuration {
     public static final String BACKUPS_FOLDER = "backups";
     public static final String PROGRAMS_FOLDER = "programs";
     public static final String LOGS_FOLDER = "logs";
+    public static final String CACHE_FOLDER = "cache";
+    public static final String STAGING_FOLDER = "staging";
+    public static final String BLOBS_FOLDER = "blobs";
     public static final String DATA_FILE = "data.json";
+    public static final String DATA_JOURNAL_FILE = "data.journal";
+    public static final String DATA_SNAPSHOT_FILE = "data.bin";
+    public static final String CATALOG_FILE = "catalog.json";
+    public static final String RESPONSE_CACHE_FILE = "response_cache.json";
     public static final String SETTINGS_FILE = "settings.json";
+    public static final String LOCK_FILE = "client.lock";
     public static final String UPDATER_FILE = "Code_Speak_Distribution_Updater.jar";
     public static final String README_FILE = "Read Me.pdf";
     
@@ -9,25 +9,31 @@ import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
-import java.util.List;
+import java.util.logging.Logger;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.control.Alert;
 import javafx.stage.Stage;
 import org.codespeak.distribution.client.Settings.SettingFields;
-import org.codespeak.distribution.client.data.Category;
-import org.codespeak.distribution.client.data.Dependency;
-import org.codespeak.distribution.client.data.Program;
+import org.codespeak.distribution.client.data.Catalog;
+import org.codespeak.distribution.client.data.query.ErrorType;
 import org.codespeak.distribution.client.objects.ClientException;
-import org.codespeak.distribution.client.data.query.QueryTypes;
+import org.codespeak.distribution.client.objects.FileTransaction;
+import org.codespeak.distribution.client.objects.InstanceLock;
 import org.codespeak.distribution.client.handler.BackendHandler;
+import org.codespeak.distribution.client.handler.CatalogLoader;
 import org.codespeak.distribution.client.handler.DataHandler;
+import org.codespeak.distribution.client.handler.DataJournal;
+import org.codespeak.distribution.client.handler.JobHandler;
+import org.codespeak.distribution.client.handler.MirrorServer;
+import org.codespeak.distribution.client.handler.transport.CircuitBreaker;
+import org.codespeak.distribution.client.handler.transport.URLConnectionTransport;
 import org.codespeak.distribution.client.objects.StageController;
 import org.codespeak.distribution.client.scenes.MainSceneController;
 import org.codespeak.distribution.client.scenes.SceneTypes;
 import org.codespeak.distribution.client.util.DateUtil;
 import org.codespeak.distribution.client.util.SceneUtil;
 import org.codespeak.distribution.client.util.StringUtil;
-import org.json.JSONObject;
 
 /**
  * The main class
@@ -36,11 +42,94 @@ import org.json.JSONObject;
  */
 public class Main extends Application {
     
+    private static final Logger LOGGER = Logger.getLogger(Main.class.getName());
+    
     private static ClientException savedException = null;
-    private static boolean online = true;
+    private static volatile boolean online = true;
+    private static volatile Stage mainStage = null;
+    private static boolean refreshCatalog = false;
+    private static boolean alreadyRunning = false;
+    
+    private static void goOffline() {
+        online = false;
+        
+        Stage stage = mainStage;
+        
+        if (stage != null) {
+            Platform.runLater(() -> stage.setTitle(Configuration.PROGRAM_NAME + " - Currently Offline"));
+        }
+    }
+    
+    private static void goOnline() {
+        online = true;
+        
+        Stage stage = mainStage;
+        
+        if (stage != null) {
+            Platform.runLater(() -> stage.setTitle(Configuration.PROGRAM_NAME));
+        }
+    }
+    
+    private static void onCircuitStateChange(CircuitBreaker.State state) {
+        if (state == CircuitBreaker.State.OPEN) {
+            LOGGER.warning("The distribution server stopped responding. Switching to offline mode.");
+            
+            goOffline();
+        } else if (state == CircuitBreaker.State.CLOSED) {
+            // A request that was already under way when the breaker opened
+            // reached the server, so the client can go back online
+            LOGGER.info("The distribution server is responding again. Switching to online mode.");
+            
+            goOnline();
+        }
+    }
+    
+    private void refreshCatalogInBackground(MainSceneController controller, boolean notifyOfNewPrograms) {
+        Thread thread = new Thread(() -> {
+            try {
+                Catalog catalog = CatalogLoader.fetch();
+                
+                CatalogLoader.saveCachedCatalog(catalog);
+                
+                Platform.runLater(() -> {
+                    DataHandler.setCatalog(catalog);
+                    controller.refreshCatalog();
+                    controller.checkClientUpdate(true);
+                    
+                    if (notifyOfNewPrograms) {
+                        controller.checkForNewPrograms();
+                    }
+                });
+            } catch (ClientException ex) {
+                logError(ex);
+                
+                goOffline();
+                
+                Platform.runLater(() -> {
+                    Alert alert = ex.buildAlert();
+                    alert.show();
+                });
+            }
+        }, "Catalog Refresh");
+        
+        thread.setDaemon(true);
+        thread.start();
+    }
     
     @Override
     public void start(Stage stage) throws Exception {
+        if (alreadyRunning) {
+            ClientException ex = new ClientException(ErrorType.ERROR_WARNING, "Unable to start the client.",
+                                                     new Exception("Another instance of the client is already running."));
+            
+            Alert alert = ex.buildAlert();
+            alert.showAndWait();
+            
+            Platform.exit();
+            
+            return;
+        }
+        
         String title = Configuration.PROGRAM_NAME;
         
         if (!online) {
@@ -49,15 +138,21 @@ public class Main extends Application {
         
         StageController<MainSceneController> stageController = SceneUtil.getScene(SceneTypes.MAIN, title);
         stage = stageController.getStage();
+        mainStage = stage;
         MainSceneController controller = stageController.getController();
         
         stage.show();
-        controller.checkClientUpdate(true);
         
         boolean notifyOfNewPrograms = Configuration.getSettings().getValue(SettingFields.NOTIFY_OF_NEW_PROGRAMS);
         
-        if (notifyOfNewPrograms) {
-            controller.checkForNewPrograms();
+        if (refreshCatalog) {
+            refreshCatalogInBackground(controller, notifyOfNewPrograms);
+        } else {
+            controller.checkClientUpdate(true);
+
+            if (notifyOfNewPrograms) {
+                controller.checkForNewPrograms();
+            }
         }
         
         if (savedException != null) {
@@ -68,62 +163,82 @@ public class Main extends Application {
 
     @Override
     public void stop() throws FileNotFoundException {
-        JSONObject json = DataHandler.exportDataToJSON();
-        File dataFile = new File(Configuration.DATA_FILE);
-        
-        if (dataFile.exists()) {
-            dataFile.delete();
+        if (alreadyRunning) {
+            return;
         }
         
-        PrintWriter writer = new PrintWriter(dataFile);
-        writer.write(json.toString(4));
-        writer.close();
+        JobHandler.cancelAllJobs();
+        MirrorServer.stop();
+        DataJournal.compact();
+        DataJournal.close();
         
         Configuration.writeSettingsToFile();
+        BackendHandler.getResponseCache().save(new File(Configuration.RESPONSE_CACHE_FILE));
+        
+        LOGGER.info("Backend requests: " + BackendHandler.getMetrics());
+        
+        InstanceLock.release();
     }
     
     /**
      * @param args the command line arguments
      */
     public static void main(String[] args) throws IOException {
-        try {
-            List<Category> categories = BackendHandler.getDataFromQuery(QueryTypes.GET_CATEGORIES);
-
-            for (Category category : categories) {
-                DataHandler.addCategory(category, false);
-            }
-
-            List<Dependency> dependencies = BackendHandler.getDataFromQuery(QueryTypes.GET_DEPENDENCIES);
-
-            for (Dependency dependency : dependencies) {
-                DataHandler.addDependency(dependency, false);
-            }
+        URLConnectionTransport.configureConnectionPool();
+        
+        // Nothing is loaded or recovered while another instance, such as
+        // the command line, is working in the client folder
+        if (!InstanceLock.acquire()) {
+            alreadyRunning = true;
+            
+            launch(args);
+            
+            return;
+        }
+        
+        FileTransaction.recoverAll();
+        BackendHandler.getCircuitBreaker().addListener(Main::onCircuitStateChange);
+        BackendHandler.getResponseCache().load(new File(Configuration.RESPONSE_CACHE_FILE));
+        
+        Catalog cachedCatalog = CatalogLoader.loadCachedCatalog();
+        
+        if (cachedCatalog != null) {
+            // Show the saved catalog right away and refresh it once the
+            // window is showing
+            DataHandler.setCatalog(cachedCatalog);
+            refreshCatalog = true;
+        } else {
+            try {
+                Catalog catalog = CatalogLoader.fetch();
 
-            List<Program> programs = BackendHandler.getDataFromQuery(QueryTypes.GET_PROGRAMS);
+                DataHandler.setCatalog(catalog);
+                CatalogLoader.saveCachedCatalog(catalog);
+            } catch (ClientException ex) {
+                savedException = ex;
+                online = false;
 
-            for (Program program : programs) {
-                DataHandler.addProgram(program, false);
+                logError(ex);
             }
-        } catch (ClientException ex) {
-            savedException = ex;
-            online = false;
-            
-            logError(ex);
         }
         
         File programsFolder = new File(Configuration.PROGRAMS_FOLDER);
-        File dataFile = new File(Configuration.DATA_FILE);
         
         if (!programsFolder.exists()) {
             programsFolder.mkdir();
         }
         
-        if (dataFile.exists()) {
-            byte[] bytes = Files.readAllBytes(dataFile.toPath());
-            String jsonString = new String(bytes);
-            JSONObject json = new JSONObject(jsonString);
+        DataJournal.load();
+        
+        boolean mirrorServerEnabled = Configuration.getSettings().getValue(SettingFields.MIRROR_SERVER_ENABLED);
+        
+        if (mirrorServerEnabled) {
+            int port = Configuration.getSettings().getValue(SettingFields.MIRROR_SERVER_PORT);
             
-            DataHandler.importDataFromJSON(json);
+            try {
+                MirrorServer.start(port);
+            } catch (IOException ex) {
+                LOGGER.warning("Unable to start the mirror on port " + port + ": " + ex.getMessage());
+            }
         }
         
         launch(args);
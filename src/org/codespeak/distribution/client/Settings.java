@@ -17,7 +17,19 @@ public class Settings {
         REMEMBER_SELECTED_CATEGORY("remember_selected_category", false),
         CHECK_CLIENT_UPDATE_ON_STARTUP("check_client_update_on_startup", true),
         BACKUP_BEFORE_REMOVING_TEXT_FILES("backup_before_removing_text_files", true),
-        NOTIFY_OF_NEW_PROGRAMS("notify_of_new_programs", true);
+        NOTIFY_OF_NEW_PROGRAMS("notify_of_new_programs", true),
+        DOWNLOAD_THREADS("download_threads", 4),
+        BINARY_DATA_SNAPSHOT("binary_data_snapshot", false),
+        CONCURRENT_JOBS("concurrent_jobs", 2),
+        DOWNLOAD_SPEED_LIMIT("download_speed_limit", 0),
+        CONNECT_TIMEOUT("connect_timeout", 10000),
+        READ_TIMEOUT("read_timeout", 30000),
+        REQUEST_ATTEMPTS("request_attempts", 3),
+        MIRROR_URL("mirror_url", ""),
+        MIRROR_SERVER_ENABLED("mirror_server_enabled", false),
+        MIRROR_SERVER_PORT("mirror_server_port", 8787),
+        MIRROR_CACHE_SIZE("mirror_cache_size", 2048),
+        ENDPOINTS("endpoints", "");
         
         private final String key;
         private final Object defaultValue;
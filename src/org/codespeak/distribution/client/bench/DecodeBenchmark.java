@@ -0,0 +1,218 @@
+package org.codespeak.distribution.client.bench;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.codespeak.distribution.client.data.Category;
+import org.codespeak.distribution.client.data.Dependency;
+import org.codespeak.distribution.client.data.Program;
+import org.codespeak.distribution.client.data.query.Decoder;
+import org.codespeak.distribution.client.util.IntMap;
+import org.codespeak.distribution.client.util.JsonReader;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * A benchmark comparing the streaming decoder used for query responses with
+ * the previous path, which read each response into a String and a JSONObject
+ * tree before converting it. A programs response of the specified size is
+ * generated, and each path decodes it from UTF-8 bytes into Program objects.
+ * <p>
+ * Usage: DecodeBenchmark [programs] [iterations]
+ *
+ * @author Vector
+ */
+public class DecodeBenchmark {
+
+    /**
+     * An interface for a way of decoding a programs response
+     */
+    private interface DecodePath {
+
+        int decode(byte[] response) throws IOException;
+
+    }
+
+    private static final int DEFAULT_PROGRAMS = 20000;
+    private static final int DEFAULT_ITERATIONS = 20;
+    private static final int WARMUP_ITERATIONS = 10;
+    private static final int CATEGORIES = 20;
+    private static final int DEPENDENCIES = 50;
+
+    private static final IntMap<Category> categories = new IntMap<Category>();
+    private static final IntMap<Dependency> dependencies = new IntMap<Dependency>();
+
+    private static byte[] createResponse(int programCount) {
+        JSONArray contents = new JSONArray();
+
+        for (int i = 1; i <= programCount; i++) {
+            JSONObject program = new JSONObject();
+            JSONArray programDependencies = new JSONArray();
+
+            for (int j = 0; j < 3; j++) {
+                JSONObject dependency = new JSONObject();
+
+                dependency.put("id", ((i + j) % DEPENDENCIES) + 1);
+                dependency.put("flags", j);
+
+                programDependencies.put(dependency);
+            }
+
+            program.put("id", i);
+            program.put("category_id", (i % CATEGORIES) + 1);
+            program.put("slug", "program-" + i);
+            program.put("name", "Program " + i);
+            program.put("description", "Description of program " + i + " with \"quoted\" text and unicode \u00e9\u00e8");
+            program.put("launch_file", "program" + i + ".exe");
+            program.put("help_file", "readme.txt");
+            program.put("version", "1." + (i % 10) + "." + (i % 7));
+            program.put("release_time", "2019-10-01T12:00:00Z");
+            program.put("dependencies", programDependencies);
+
+            contents.put(program);
+        }
+
+        JSONObject response = new JSONObject();
+
+        response.put("status", 1);
+        response.put("contents", contents);
+
+        return response.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void createLookups() {
+        for (int i = 1; i <= CATEGORIES; i++) {
+            JSONObject category = new JSONObject();
+
+            category.put("id", i);
+            category.put("slug", "category-" + i);
+            category.put("name", "Category " + i);
+            category.put("description", "");
+
+            categories.put(i, Category.fromJSON(category));
+        }
+
+        for (int i = 1; i <= DEPENDENCIES; i++) {
+            JSONObject dependency = new JSONObject();
+
+            dependency.put("id", i);
+            dependency.put("name", "Dependency " + i);
+            dependency.put("description", "");
+            dependency.put("url", "");
+
+            dependencies.put(i, Dependency.fromJSON(dependency));
+        }
+    }
+
+    private static Reader openReader(byte[] response) {
+        return new InputStreamReader(new ByteArrayInputStream(response), StandardCharsets.UTF_8);
+    }
+
+    private static int decodeWithJSONObject(byte[] response) throws IOException {
+        StringBuilder body = new StringBuilder();
+
+        try (BufferedReader reader = new BufferedReader(openReader(response))) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                body.append(line);
+            }
+        }
+
+        JSONObject json = new JSONObject(body.toString());
+
+        if (json.getInt("status") != 1) {
+            throw new IOException("Unexpected status.");
+        }
+
+        JSONArray contents = json.getJSONArray("contents");
+        int count = 0;
+
+        for (int i = 0; i < contents.length(); i++) {
+            Program.fromJSON(contents.getJSONObject(i), categories, dependencies, false);
+            count++;
+        }
+
+        return count;
+    }
+
+    private static int decodeWithJsonReader(byte[] response) throws IOException {
+        Decoder<List<Program>> decoder = Decoder.listOf((JsonReader reader) -> {
+            return Program.read(reader, categories::get, dependencies::get, false);
+        });
+        List<Program> programs = null;
+        int status = 0;
+
+        try (JsonReader reader = new JsonReader(openReader(response))) {
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "status":
+                        status = reader.nextInt();
+
+                        break;
+                    case "contents":
+                        programs = decoder.decode(reader);
+
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+
+            reader.endObject();
+        }
+
+        if (status != 1 || programs == null) {
+            throw new IOException("Unexpected status.");
+        }
+
+        return programs.size();
+    }
+
+    private static double measure(DecodePath path, byte[] response, int iterations) throws IOException {
+        long totalNanos = 0;
+
+        for (int i = 0; i < iterations; i++) {
+            long startTime = System.nanoTime();
+
+            path.decode(response);
+            totalNanos += System.nanoTime() - startTime;
+        }
+
+        return totalNanos / 1000000.0 / iterations;
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        int programCount = (args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PROGRAMS);
+        int iterations = (args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS);
+
+        createLookups();
+
+        byte[] response = createResponse(programCount);
+
+        System.out.println("Decoding " + programCount + " programs (" + (response.length / 1024) + " KB), "
+                           + iterations + " iterations");
+
+        // Both paths are run before measuring so the JIT compiler has
+        // compiled them
+        measure(DecodeBenchmark::decodeWithJSONObject, response, WARMUP_ITERATIONS);
+        measure(DecodeBenchmark::decodeWithJsonReader, response, WARMUP_ITERATIONS);
+
+        double treeMillis = measure(DecodeBenchmark::decodeWithJSONObject, response, iterations);
+        double streamingMillis = measure(DecodeBenchmark::decodeWithJsonReader, response, iterations);
+
+        System.out.println(String.format("JSONObject tree: %.1f ms per response", treeMillis));
+        System.out.println(String.format("JsonReader:      %.1f ms per response", streamingMillis));
+        System.out.println(String.format("Speedup:         %.2fx", treeMillis / streamingMillis));
+    }
+
+}
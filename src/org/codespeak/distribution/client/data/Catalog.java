@@ -0,0 +1,145 @@
+package org.codespeak.distribution.client.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.codespeak.distribution.client.util.IntMap;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * A class representing the catalog of categories, dependencies and programs
+ * available from the distribution system
+ *
+ * @author Vector
+ */
+public class Catalog {
+
+    private final List<Category> categories;
+    private final List<Dependency> dependencies;
+    private final List<Program> programs;
+
+    public Catalog(List<Category> categories, List<Dependency> dependencies, List<Program> programs) {
+        this.categories = categories;
+        this.dependencies = dependencies;
+        this.programs = programs;
+    }
+
+    /**
+     * Gets an unmodifiable list of the categories in this catalog
+     * @return unmodifiable list of the categories in this catalog
+     */
+    public List<Category> getCategories() {
+        return Collections.unmodifiableList(categories);
+    }
+
+    /**
+     * Gets an unmodifiable list of the dependencies in this catalog
+     * @return unmodifiable list of the dependencies in this catalog
+     */
+    public List<Dependency> getDependencies() {
+        return Collections.unmodifiableList(dependencies);
+    }
+
+    /**
+     * Gets an unmodifiable list of the programs in this catalog
+     * @return unmodifiable list of the programs in this catalog
+     */
+    public List<Program> getPrograms() {
+        return Collections.unmodifiableList(programs);
+    }
+
+    /**
+     * Converts this Catalog object to JSON
+     * @return JSON representation of this Catalog object
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        JSONArray jsonCategories = new JSONArray();
+        JSONArray jsonDependencies = new JSONArray();
+        JSONArray jsonPrograms = new JSONArray();
+
+        for (Category category : categories) {
+            jsonCategories.put(category.toJSON());
+        }
+
+        for (Dependency dependency : dependencies) {
+            jsonDependencies.put(dependency.toJSON());
+        }
+
+        for (Program program : programs) {
+            jsonPrograms.put(program.toJSON());
+        }
+
+        json.put("categories", jsonCategories);
+        json.put("dependencies", jsonDependencies);
+        json.put("programs", jsonPrograms);
+
+        return json;
+    }
+
+    /**
+     * Creates a catalog from categories, dependencies and the JSON of its
+     * programs. Each program is linked to the categories and dependencies
+     * given here
+     * @param categories categories of the catalog
+     * @param dependencies dependencies of the catalog
+     * @param jsonPrograms JSON array of the programs of the catalog
+     * @return catalog containing the linked programs
+     */
+    public static Catalog link(List<Category> categories, List<Dependency> dependencies, JSONArray jsonPrograms) {
+        IntMap<Category> categoryMap = new IntMap<Category>(categories.size());
+        IntMap<Dependency> dependencyMap = new IntMap<Dependency>(dependencies.size());
+        List<Program> programs = new ArrayList<Program>();
+
+        for (Category category : categories) {
+            categoryMap.put(category.getId(), category);
+        }
+
+        for (Dependency dependency : dependencies) {
+            dependencyMap.put(dependency.getId(), dependency);
+        }
+
+        for (int i = 0; i < jsonPrograms.length(); i++) {
+            JSONObject obj = jsonPrograms.getJSONObject(i);
+
+            programs.add(Program.fromJSON(obj, categoryMap, dependencyMap, false));
+        }
+
+        return new Catalog(categories, dependencies, programs);
+    }
+
+    /**
+     * Creates a Catalog object from JSON
+     * @param json JSON to construct a Catalog object from
+     * @return Catalog object represented from JSON
+     */
+    public static Catalog fromJSON(JSONObject json) {
+        List<Category> categories = new ArrayList<Category>();
+        List<Dependency> dependencies = new ArrayList<Dependency>();
+        JSONArray jsonPrograms = new JSONArray();
+
+        if (json.has("categories")) {
+            JSONArray jsonCategories = json.getJSONArray("categories");
+
+            for (int i = 0; i < jsonCategories.length(); i++) {
+                categories.add(Category.fromJSON(jsonCategories.getJSONObject(i)));
+            }
+        }
+
+        if (json.has("dependencies")) {
+            JSONArray jsonDependencies = json.getJSONArray("dependencies");
+
+            for (int i = 0; i < jsonDependencies.length(); i++) {
+                dependencies.add(Dependency.fromJSON(jsonDependencies.getJSONObject(i)));
+            }
+        }
+
+        if (json.has("programs")) {
+            jsonPrograms = json.getJSONArray("programs");
+        }
+
+        return link(categories, dependencies, jsonPrograms);
+    }
+
+}
@@ -1,5 +1,7 @@
 package org.codespeak.distribution.client.data;
 
+import java.io.IOException;
+import org.codespeak.distribution.client.util.JsonReader;
 import org.json.JSONObject;
 
 /**
@@ -84,6 +86,18 @@ public class Category {
         return this.getId() == category.getId();
     }
     
+    /**
+     * Creates a category object from its values
+     * @param id ID of the category
+     * @param slug slug of the category
+     * @param name name of the category
+     * @param description description of the category
+     * @return a category object
+     */
+    public static Category create(int id, String slug, String name, String description) {
+        return new Category(id, slug, name, description);
+    }
+    
     /**
      * Creates a category object from JSON
      * @param json JSON object containing data for a Category object
@@ -114,4 +128,46 @@ public class Category {
         return new Category(id, slug, name, description);
     }
     
+    /**
+     * Reads a category object from a JSON reader
+     * @param reader reader positioned at a JSON object comprising a category
+     * @return a category object
+     * @throws IOException thrown if the category could not be read
+     */
+    public static Category read(JsonReader reader) throws IOException {
+        int id = 0;
+        String slug = "";
+        String name = "";
+        String description = "";
+        
+        reader.beginObject();
+        
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextInt();
+                    
+                    break;
+                case "slug":
+                    slug = reader.nextString();
+                    
+                    break;
+                case "name":
+                    name = reader.nextString();
+                    
+                    break;
+                case "description":
+                    description = reader.nextString();
+                    
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        
+        reader.endObject();
+        
+        return new Category(id, slug, name, description);
+    }
+    
 }
@@ -1,7 +1,9 @@
 package org.codespeak.distribution.client.data;
 
+import java.io.IOException;
 import java.time.Instant;
 import org.codespeak.distribution.client.util.DateUtil;
+import org.codespeak.distribution.client.util.JsonReader;
 import org.json.JSONObject;
 
 /**
@@ -83,4 +85,42 @@ public class ChangelogEntry {
         return new ChangelogEntry(version, content, releaseTime);
     }
     
+    /**
+     * Reads a changelog entry object from a JSON reader
+     * @param reader reader positioned at a JSON object comprising a changelog
+     * entry
+     * @return a changelog entry object
+     * @throws IOException thrown if the changelog entry could not be read
+     */
+    public static ChangelogEntry read(JsonReader reader) throws IOException {
+        String version = "";
+        String content = "";
+        Instant releaseTime = null;
+        
+        reader.beginObject();
+        
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "version":
+                    version = reader.nextString();
+                    
+                    break;
+                case "content":
+                    content = reader.nextString();
+                    
+                    break;
+                case "release_time":
+                    releaseTime = DateUtil.getInstant(reader.nextString());
+                    
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        
+        reader.endObject();
+        
+        return new ChangelogEntry(version, content, releaseTime);
+    }
+    
 }
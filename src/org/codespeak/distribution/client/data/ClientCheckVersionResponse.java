@@ -1,7 +1,9 @@
 package org.codespeak.distribution.client.data;
 
+import java.io.IOException;
 import java.time.Instant;
 import org.codespeak.distribution.client.util.DateUtil;
+import org.codespeak.distribution.client.util.JsonReader;
 import org.json.JSONObject;
 
 /**
@@ -85,4 +87,46 @@ public class ClientCheckVersionResponse {
         return new ClientCheckVersionResponse(requestVersion, requestReleaseTime, version, releaseTime);
     }
     
+    /**
+     * Reads a client check version response object from a JSON reader
+     * @param reader reader positioned at a JSON object comprising the response
+     * @return a client check version response object
+     * @throws IOException thrown if the response could not be read
+     */
+    public static ClientCheckVersionResponse read(JsonReader reader) throws IOException {
+        String requestVersion = "";
+        Instant requestReleaseTime = null;
+        String version = "";
+        Instant releaseTime = null;
+        
+        reader.beginObject();
+        
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "request_version":
+                    requestVersion = reader.nextString();
+                    
+                    break;
+                case "request_release_time":
+                    requestReleaseTime = DateUtil.getInstant(reader.nextString());
+                    
+                    break;
+                case "version":
+                    version = reader.nextString();
+                    
+                    break;
+                case "release_time":
+                    releaseTime = DateUtil.getInstant(reader.nextString());
+                    
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        
+        reader.endObject();
+        
+        return new ClientCheckVersionResponse(requestVersion, requestReleaseTime, version, releaseTime);
+    }
+    
 }
@@ -1,5 +1,7 @@
 package org.codespeak.distribution.client.data;
 
+import java.io.IOException;
+import org.codespeak.distribution.client.util.JsonReader;
 import org.json.JSONObject;
 
 /**
@@ -84,6 +86,18 @@ public class Dependency {
         return this.getId() == dependency.getId();
     }
     
+    /**
+     * Creates a dependency object from its values
+     * @param id ID of the dependency
+     * @param name name of the dependency
+     * @param description description of the dependency
+     * @param url URL of the dependency
+     * @return a dependency object
+     */
+    public static Dependency create(int id, String name, String description, String url) {
+        return new Dependency(id, name, description, url);
+    }
+    
     /**
      * Creates a dependency object from a JSON object
      * @param json JSON object comprising a dependency
@@ -114,4 +128,46 @@ public class Dependency {
         return new Dependency(id, name, description, url);
     }
     
+    /**
+     * Reads a dependency object from a JSON reader
+     * @param reader reader positioned at a JSON object comprising a dependency
+     * @return a dependency object
+     * @throws IOException thrown if the dependency could not be read
+     */
+    public static Dependency read(JsonReader reader) throws IOException {
+        int id = 0;
+        String name = "";
+        String description = "";
+        String url = "";
+        
+        reader.beginObject();
+        
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextInt();
+                    
+                    break;
+                case "name":
+                    name = reader.nextString();
+                    
+                    break;
+                case "description":
+                    description = reader.nextString();
+                    
+                    break;
+                case "url":
+                    url = reader.nextString();
+                    
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        
+        reader.endObject();
+        
+        return new Dependency(id, name, description, url);
+    }
+    
 }
@@ -1,8 +1,10 @@
 package org.codespeak.distribution.client.data;
 
 import java.io.File;
+import java.io.IOException;
 import java.time.Instant;
 import org.codespeak.distribution.client.util.DateUtil;
+import org.codespeak.distribution.client.util.JsonReader;
 import org.codespeak.distribution.client.util.StringUtil;
 import org.json.JSONObject;
 
@@ -219,4 +221,56 @@ public class FileInfo {
         return new FileInfo(fileName, filePath, checksum, status, updateVersion, updateTime);
     }
     
+    /**
+     * Reads a FileInfo object from a JSON reader
+     * @param reader reader positioned at a JSON object comprising a file
+     * @return a FileInfo object
+     * @throws IOException thrown if the file could not be read
+     */
+    public static FileInfo read(JsonReader reader) throws IOException {
+        String fileName = "";
+        String filePath = "";
+        String checksum = "";
+        FileStatus status = FileStatus.NEW;
+        String updateVersion = "";
+        Instant updateTime = null;
+        
+        reader.beginObject();
+        
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "file_name":
+                    fileName = reader.nextString();
+                    
+                    break;
+                case "file_path":
+                    filePath = reader.nextString();
+                    
+                    break;
+                case "checksum":
+                    checksum = reader.nextString();
+                    
+                    break;
+                case "status":
+                    status = FileStatus.fromCode(reader.nextInt());
+                    
+                    break;
+                case "update_version":
+                    updateVersion = reader.nextString();
+                    
+                    break;
+                case "update_time":
+                    updateTime = DateUtil.getInstant(reader.nextString());
+                    
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        
+        reader.endObject();
+        
+        return new FileInfo(fileName, filePath, checksum, status, updateVersion, updateTime);
+    }
+    
 }
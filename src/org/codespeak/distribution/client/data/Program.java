@@ -12,20 +12,29 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
 import org.codespeak.distribution.client.handler.DataHandler;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntFunction;
 import org.codespeak.distribution.client.Configuration;
 import org.codespeak.distribution.client.Settings.SettingFields;
 import org.codespeak.distribution.client.data.FileInfo.FileStatus;
 import org.codespeak.distribution.client.objects.ClientException;
+import org.codespeak.distribution.client.objects.DownloadListener;
+import org.codespeak.distribution.client.objects.FileDownloader;
+import org.codespeak.distribution.client.objects.FileTransaction;
+import org.codespeak.distribution.client.objects.FileVerifier;
+import org.codespeak.distribution.client.objects.VerificationCache;
 import org.codespeak.distribution.client.data.query.QueryTypes;
 import org.codespeak.distribution.client.handler.BackendHandler;
+import org.codespeak.distribution.client.handler.BlobStore;
 import org.codespeak.distribution.client.util.DateUtil;
+import org.codespeak.distribution.client.util.IntMap;
+import org.codespeak.distribution.client.util.JsonReader;
 import org.codespeak.distribution.client.util.MiscUtil;
-import org.codespeak.distribution.client.util.StringUtil;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -193,6 +202,16 @@ public class Program {
     public boolean isInstalled() {
         return installed;
     }
+    
+    /**
+     * Sets if this program object represents an installed program. This is
+     * set on the thread that owns the data of the client once the files of
+     * the program have been installed or removed
+     * @param installed whether this program is installed
+     */
+    public void setInstalled(boolean installed) {
+        this.installed = installed;
+    }
 
     /**
      * Checks if this program is detached from the distribution system
@@ -210,6 +229,20 @@ public class Program {
         this.detached = detached;
     }
     
+    /**
+     * Gets a copy of this program that can be changed without changing this
+     * program
+     * @return copy of this program
+     */
+    public Program copy() {
+        Program program = new Program(id, category, slug, name, description, launchFile, helpFile, version,
+                                      releaseTime, new HashMap<Dependency, Long>(dependencies), installed);
+        
+        program.detached = detached;
+        
+        return program;
+    }
+    
     /**
      * Gets the directory of this program
      * @return directory of this program
@@ -275,7 +308,8 @@ public class Program {
              .map(Path::toFile)
              .forEach(File::delete);
         
-        installed = false;
+        VerificationCache.delete(slug);
+        BlobStore.removeProgram(slug);
     }
     
     /**
@@ -285,82 +319,140 @@ public class Program {
      * @throws IOException thrown if an error occurs while installing
      */
     public void install() throws IOException, ClientException {
+        install(null);
+    }
+    
+    /**
+     * Installs this program
+     * @param listener listener receiving download progress, or null for none
+     * @throws org.codespeak.distribution.client.objects.ClientException if an
+     * error occurs while performing a query
+     * @throws IOException thrown if an error occurs while installing
+     */
+    public void install(DownloadListener listener) throws IOException, ClientException {
         List<FileInfo> files = BackendHandler.getDataFromQuery(QueryTypes.GET_PROGRAM_FILES, "&id=" + id);
-        Path programDirectory = getDirectory();
-        File programDirectoryFile = programDirectory.toFile();
+        FileDownloader downloader = new FileDownloader(slug);
+        FileTransaction transaction = new FileTransaction(slug, getDirectory());
         
-        programDirectoryFile.mkdir();
+        transaction.begin();
+        downloader.setListener(listener);
         
         for (FileInfo file : files) {
-            String currentFilePath = file.getPath();
-            String currentFilePathAndName = file.getPathAndName();
-            String currentRemotePathAndName = file.getRemotePathAndName();
-
-            if (!StringUtil.isNullOrEmpty(currentFilePath)) {
-                Path fullFilePath = programDirectory.resolve(currentFilePath);
-
-                fullFilePath.toFile().mkdirs();
-            }
-            
-            Path localFilePathAndName = programDirectory.resolve(currentFilePathAndName);
-            ReadableByteChannel readableByteChannel = BackendHandler.getRemoteFileChannel(slug, currentRemotePathAndName);
-            FileChannel outChannel = new FileOutputStream(localFilePathAndName.toFile()).getChannel();
+            downloader.addFile(file, transaction.getStagedPath(file));
+            transaction.replaceFile(file);
+        }
+        
+        try {
+            downloader.download();
+        } catch (IOException | ClientException ex) {
+            transaction.abort();
             
-            outChannel.transferFrom(readableByteChannel, 0, Long.MAX_VALUE);
-            readableByteChannel.close();
-            outChannel.close();
+            throw ex;
         }
         
-        installed = true;
+        transaction.commit();
+        BlobStore.addReferences(slug, files);
     }
     
     /**
-     * Updates this program with the latest files and information using details
-     * from the latest Program object
+     * Updates the files of this program to their latest versions. The
+     * information on this program is changed afterwards with applyUpdate
      * @param program program to get updated information from
      * @throws org.codespeak.distribution.client.objects.ClientException if an
      * error occurs while performing a query
      * @throws java.io.IOException error thrown if an error occurs during update
      */
     public void update(Program program) throws IOException, ClientException {
+        update(program, null);
+    }
+    
+    /**
+     * Updates the files of this program to their latest versions. The
+     * information on this program is changed afterwards with applyUpdate
+     * @param program program to get updated information from
+     * @param listener listener receiving download progress, or null for none
+     * @throws org.codespeak.distribution.client.objects.ClientException if an
+     * error occurs while performing a query
+     * @throws java.io.IOException error thrown if an error occurs during update
+     */
+    public void update(Program program, DownloadListener listener) throws IOException, ClientException {
         List<FileInfo> files = BackendHandler.getDataFromQuery(QueryTypes.GET_PROGRAM_FILES, "&id=" + id + "&since_version=" + version);
         Path programDirectory = getDirectory();
+        FileDownloader downloader = new FileDownloader(slug);
+        FileTransaction transaction = new FileTransaction(slug, programDirectory);
+        
+        transaction.begin();
+        downloader.setListener(listener);
         
         for (FileInfo file : files) {
-            Path filePath = Paths.get(file.getPathAndName());
-            Path updateFilePath = programDirectory.resolve(filePath);
-            File updateFile = updateFilePath.toFile();
-            
-            if (updateFile.exists()) {
-                boolean backupBeforeRemovingTextFile = Configuration.getSettings().getValue(SettingFields.BACKUP_BEFORE_REMOVING_TEXT_FILES);
-                
-                if (file.getFileStatus() == FileStatus.REMOVED && backupBeforeRemovingTextFile
-                        && MiscUtil.isNonEmptyTextFile(updateFilePath)) {
-                    backupFile(programDirectory, filePath);
-                }
-                
-                updateFile.delete();
-            }
-            
             switch (file.getFileStatus()) {
                 case NEW:
-                case MODIFIED:
-                    Path parentPath = updateFilePath.getParent();
-                    
-                    MiscUtil.ensurePathExists(parentPath);
+                    downloader.addFile(file, transaction.getStagedPath(file));
+                    transaction.replaceFile(file);
                     
-                    ReadableByteChannel readableByteChannel = BackendHandler.getRemoteFileChannel(slug, file.getRemotePathAndName());
-                    FileChannel outChannel = new FileOutputStream(updateFile).getChannel();
+                    break;
+                case MODIFIED:
+                    // The installed version is only replaced on commit, so it
+                    // can still be patched while the update is staged
+                    Path installedPath = programDirectory.resolve(Paths.get(file.getPathAndName()));
                     
-                    outChannel.transferFrom(readableByteChannel, 0, Long.MAX_VALUE);
+                    downloader.addFile(file, transaction.getStagedPath(file), installedPath);
+                    transaction.replaceFile(file);
                     
-                    readableByteChannel.close();
-                    outChannel.close();
+                    break;
+                case REMOVED:
+                    transaction.removeFile(file);
                     
                     break;
             }
         }
-
+        
+        try {
+            downloader.download();
+        } catch (IOException | ClientException ex) {
+            transaction.abort();
+            
+            throw ex;
+        }
+        
+        boolean backupBeforeRemovingTextFile = Configuration.getSettings().getValue(SettingFields.BACKUP_BEFORE_REMOVING_TEXT_FILES);
+        
+        if (backupBeforeRemovingTextFile) {
+            for (FileInfo file : files) {
+                Path filePath = Paths.get(file.getPathAndName());
+                Path updateFilePath = programDirectory.resolve(filePath);
+                
+                if (file.getFileStatus() == FileStatus.REMOVED && MiscUtil.isNonEmptyTextFile(updateFilePath)) {
+                    backupFile(programDirectory, filePath);
+                }
+            }
+        }
+        
+        transaction.commit();
+        
+        List<FileInfo> removedFiles = new ArrayList<FileInfo>();
+        List<FileInfo> changedFiles = new ArrayList<FileInfo>();
+        
+        for (FileInfo file : files) {
+            if (file.getFileStatus() == FileStatus.REMOVED) {
+                removedFiles.add(file);
+            } else {
+                changedFiles.add(file);
+            }
+        }
+        
+        BlobStore.removeReferences(slug, removedFiles);
+        BlobStore.addReferences(slug, changedFiles);
+    }
+    
+    /**
+     * Applies the latest information on this program once its files have been
+     * updated. The files can be updated on another thread, but this must be
+     * called on the thread that owns the data of the client, since the
+     * information is read from there
+     * @param program program to get updated information from
+     */
+    public void applyUpdate(Program program) {
         this.category = program.getCategory();
         this.slug = program.getSlug();
         this.name = program.getName();
@@ -379,39 +471,77 @@ public class Program {
      * @throws IOException thrown if an error occurs
      */
     public void repair() throws IOException, ClientException {
+        repair(false, null);
+    }
+    
+    /**
+     * Repairs this program. Unless a deep verify is requested, files that have
+     * not changed since they were last verified are not hashed again
+     * @param deepVerify whether every file is hashed
+     * @param listener listener receiving download progress, or null for none
+     * @throws org.codespeak.distribution.client.objects.ClientException if an
+     * error occurs while performing a query
+     * @throws IOException thrown if an error occurs
+     */
+    public void repair(boolean deepVerify, DownloadListener listener) throws IOException, ClientException {
         List<FileInfo> files = BackendHandler.getDataFromQuery(QueryTypes.GET_PROGRAM_FILES, "&id=" + id);
         Path programDirectory = getDirectory();
+        FileDownloader downloader = new FileDownloader(slug);
         
-        for (FileInfo file : files) {
-            Path currentFilePath = programDirectory.resolve(file.getPathAndName());
-            File currentFilePathFile = currentFilePath.toFile();
-            File currentFolderPath = currentFilePath.getParent().toFile();
-            
-            boolean canCreateFile = false;
-            
-            if (currentFilePath.toFile().exists()) {
-                String currentChecksum = file.getChecksum();
-                String oldChecksum = MiscUtil.getFileChecksum(currentFilePath);
-                canCreateFile = !currentChecksum.equals(oldChecksum);
-                
-                if (canCreateFile) {
-                    currentFilePathFile.delete();
-                }
-            } else {
-                canCreateFile = true;
-            }
+        FileVerifier verifier = new FileVerifier(programDirectory);
+        VerificationCache cache = VerificationCache.load(slug);
+        
+        verifier.setCache(cache);
+        verifier.setDeepVerify(deepVerify);
+        downloader.setListener(listener);
+        downloader.start();
+        
+        // Files are downloaded as soon as they are found to be missing or
+        // different while the remaining files are still being verified
+        try {
+            verifier.verify(files, (FileInfo file) -> {
+                Path currentFilePath = programDirectory.resolve(file.getPathAndName());
+
+                currentFilePath.toFile().delete();
+                downloader.addFile(file, currentFilePath);
+            });
+        } catch (IOException ex) {
+            downloader.cancel();
             
-            if (canCreateFile) {
-                currentFolderPath.mkdirs();
-                
-                ReadableByteChannel readableByteChannel = BackendHandler.getRemoteFileChannel(slug, file.getRemotePathAndName());
-                FileChannel outChannel = new FileOutputStream(currentFilePathFile).getChannel();
-                
-                outChannel.transferFrom(readableByteChannel, 0, Long.MAX_VALUE);
-                
-                readableByteChannel.close();
-                outChannel.close();
-            }
+            throw ex;
+        } finally {
+            cache.save();
+        }
+        
+        downloader.await();
+        
+        // Programs installed before the blob store existed get their
+        // references here
+        BlobStore.addReferences(slug, files);
+    }
+    
+    /**
+     * Verifies the files of this program without repairing them. Unless a
+     * deep verify is requested, files that have not changed since they were
+     * last verified are not hashed again
+     * @param deepVerify whether every file is hashed
+     * @return list of files that are missing or do not match their checksum
+     * @throws org.codespeak.distribution.client.objects.ClientException if an
+     * error occurs while performing a query
+     * @throws IOException thrown if an error occurs while verifying
+     */
+    public List<FileInfo> verify(boolean deepVerify) throws IOException, ClientException {
+        List<FileInfo> files = BackendHandler.getDataFromQuery(QueryTypes.GET_PROGRAM_FILES, "&id=" + id);
+        FileVerifier verifier = new FileVerifier(getDirectory());
+        VerificationCache cache = VerificationCache.load(slug);
+        
+        verifier.setCache(cache);
+        verifier.setDeepVerify(deepVerify);
+        
+        try {
+            return verifier.verify(files, null);
+        } finally {
+            cache.save();
         }
     }
     
@@ -467,6 +597,28 @@ public class Program {
         return this.getId() == program.getId();
     }
     
+    /**
+     * Creates a Program object from its values
+     * @param id ID of the program
+     * @param category category of the program
+     * @param slug slug of the program
+     * @param name name of the program
+     * @param description description of the program
+     * @param launchFile file that launches the program
+     * @param helpFile help file of the program
+     * @param version version of the program
+     * @param releaseTime release time of the program
+     * @param dependencies dependencies of the program and their flags
+     * @param installed whether the program is installed
+     * @return a Program object
+     */
+    public static Program create(int id, Category category, String slug, String name, String description,
+                                 String launchFile, String helpFile, String version, Instant releaseTime,
+                                 Map<Dependency, Long> dependencies, boolean installed) {
+        return new Program(id, category, slug, name, description, launchFile, helpFile, version, releaseTime,
+                           dependencies, installed);
+    }
+    
     /**
      * Creates a Program object from JSON
      * @param json JSON to construct a Program object from
@@ -474,6 +626,26 @@ public class Program {
      * @return Program object represented from JSON
      */
     public static Program fromJSON(JSONObject json, boolean installed) {
+        return fromJSON(json, (int categoryId) -> DataHandler.getCategory(categoryId, installed),
+                        (int dependencyId) -> DataHandler.getDependency(dependencyId, installed), installed);
+    }
+    
+    /**
+     * Creates a Program object from JSON, linking its category and
+     * dependencies using the specified maps instead of the data handler
+     * @param json JSON to construct a Program object from
+     * @param categories map of category IDs to categories
+     * @param dependencies map of dependency IDs to dependencies
+     * @param installed whether the program is installed
+     * @return Program object represented from JSON
+     */
+    public static Program fromJSON(JSONObject json, IntMap<Category> categories,
+                                   IntMap<Dependency> dependencies, boolean installed) {
+        return fromJSON(json, categories::get, dependencies::get, installed);
+    }
+    
+    private static Program fromJSON(JSONObject json, IntFunction<Category> categoryLookup,
+                                    IntFunction<Dependency> dependencyLookup, boolean installed) {
         int id = 0;
         Category category = null;
         String slug = "";
@@ -491,7 +663,7 @@ public class Program {
         
         if (json.has("category_id")) {
             int categoryId = json.getInt("category_id");
-            category = DataHandler.getCategory(categoryId, installed);
+            category = categoryLookup.apply(categoryId);
         }
         
         if (json.has("slug")) {
@@ -539,7 +711,7 @@ public class Program {
                  }
 
                  if (dependencyId > 0) {
-                    Dependency dependency = DataHandler.getDependency(dependencyId, installed);
+                    Dependency dependency = dependencyLookup.apply(dependencyId);
                     dependencies.put(dependency, flags);
                  }
              }
@@ -548,4 +720,124 @@ public class Program {
          return new Program(id, category, slug, name, description, launchFile, helpFile, version, releaseTime, dependencies, installed);
     }
     
+    /**
+     * Reads a Program object from a JSON reader
+     * @param reader reader positioned at a JSON object comprising a program
+     * @param installed whether the program is installed
+     * @return Program object read from the reader
+     * @throws IOException thrown if the program could not be read
+     */
+    public static Program read(JsonReader reader, boolean installed) throws IOException {
+        return read(reader, (int categoryId) -> DataHandler.getCategory(categoryId, installed),
+                    (int dependencyId) -> DataHandler.getDependency(dependencyId, installed), installed);
+    }
+    
+    /**
+     * Reads a Program object from a JSON reader, linking its category and
+     * dependencies through the specified lookups
+     * @param reader reader positioned at a JSON object comprising a program
+     * @param categoryLookup lookup of categories by ID
+     * @param dependencyLookup lookup of dependencies by ID
+     * @param installed whether the program is installed
+     * @return Program object read from the reader
+     * @throws IOException thrown if the program could not be read
+     */
+    public static Program read(JsonReader reader, IntFunction<Category> categoryLookup,
+                               IntFunction<Dependency> dependencyLookup, boolean installed) throws IOException {
+        int id = 0;
+        Category category = null;
+        String slug = "";
+        String name = "";
+        String description = "";
+        String launchFile = "";
+        String helpFile = "";
+        String version = "";
+        Instant releaseTime = null;
+        Map<Dependency, Long> dependencies = new HashMap<Dependency, Long>();
+        
+        reader.beginObject();
+        
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextInt();
+                    
+                    break;
+                case "category_id":
+                    category = categoryLookup.apply(reader.nextInt());
+                    
+                    break;
+                case "slug":
+                    slug = reader.nextString();
+                    
+                    break;
+                case "name":
+                    name = reader.nextString();
+                    
+                    break;
+                case "description":
+                    description = reader.nextString();
+                    
+                    break;
+                case "launch_file":
+                    launchFile = reader.nextString();
+                    
+                    break;
+                case "help_file":
+                    helpFile = reader.nextString();
+                    
+                    break;
+                case "version":
+                    version = reader.nextString();
+                    
+                    break;
+                case "release_time":
+                    releaseTime = DateUtil.getInstant(reader.nextString());
+                    
+                    break;
+                case "dependencies":
+                    reader.beginArray();
+                    
+                    while (reader.hasNext()) {
+                        int dependencyId = 0;
+                        long flags = 0;
+                        
+                        reader.beginObject();
+                        
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "id":
+                                    dependencyId = reader.nextInt();
+                                    
+                                    break;
+                                case "flags":
+                                    flags = reader.nextLong();
+                                    
+                                    break;
+                                default:
+                                    reader.skipValue();
+                            }
+                        }
+                        
+                        reader.endObject();
+                        
+                        if (dependencyId > 0) {
+                            Dependency dependency = dependencyLookup.apply(dependencyId);
+                            dependencies.put(dependency, flags);
+                        }
+                    }
+                    
+                    reader.endArray();
+                    
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        
+        reader.endObject();
+        
+        return new Program(id, category, slug, name, description, launchFile, helpFile, version, releaseTime, dependencies, installed);
+    }
+    
 }
\ No newline at end of file
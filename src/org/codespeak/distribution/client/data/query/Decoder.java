@@ -0,0 +1,96 @@
+package org.codespeak.distribution.client.data.query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import org.codespeak.distribution.client.util.JsonReader;
+
+/**
+ * An interface for converting a JSON value to an object as it is read
+ *
+ * @author Vector
+ * @param <T> the type of object being decoded
+ */
+public interface Decoder<T> {
+
+    /**
+     * Decodes the next value from the reader
+     * @param reader reader positioned at the value to decode
+     * @return object represented by the value
+     * @throws IOException thrown if the value could not be read
+     */
+    T decode(JsonReader reader) throws IOException;
+
+    /**
+     * Gets a copy of a value decoded by this decoder. Decoded values are kept
+     * by the response cache and given out again, so a decoder of objects that
+     * can be changed must return a new copy. Values that cannot be changed
+     * are returned as they are
+     * @param value value decoded by this decoder
+     * @return copy of the value
+     */
+    default T copy(T value) {
+        return value;
+    }
+
+    /**
+     * Gets a decoder that decodes with the specified decoder and copies values
+     * with the specified copier
+     * @param <T> the type of object being decoded
+     * @param decoder decoder used for each value
+     * @param copier function returning a copy of a value
+     * @return decoder that copies its values with the copier
+     */
+    static <T> Decoder<T> withCopier(Decoder<T> decoder, UnaryOperator<T> copier) {
+        return new Decoder<T>() {
+            @Override
+            public T decode(JsonReader reader) throws IOException {
+                return decoder.decode(reader);
+            }
+
+            @Override
+            public T copy(T value) {
+                return copier.apply(value);
+            }
+        };
+    }
+
+    /**
+     * Gets a decoder for a JSON array whose elements are each decoded with
+     * the specified decoder
+     * @param <T> the type of object in the array
+     * @param elementDecoder decoder used for each element of the array
+     * @return decoder for a JSON array of the elements
+     */
+    static <T> Decoder<List<T>> listOf(Decoder<T> elementDecoder) {
+        return new Decoder<List<T>>() {
+            @Override
+            public List<T> decode(JsonReader reader) throws IOException {
+                List<T> list = new ArrayList<T>();
+
+                reader.beginArray();
+
+                while (reader.hasNext()) {
+                    list.add(elementDecoder.decode(reader));
+                }
+
+                reader.endArray();
+
+                return list;
+            }
+
+            @Override
+            public List<T> copy(List<T> value) {
+                List<T> list = new ArrayList<T>(value.size());
+
+                for (T element : value) {
+                    list.add(elementDecoder.copy(element));
+                }
+
+                return list;
+            }
+        };
+    }
+
+}
@@ -1,43 +1,51 @@
 package org.codespeak.distribution.client.data.query;
 
+import java.util.List;
 import org.codespeak.distribution.client.data.Category;
 import org.codespeak.distribution.client.data.ChangelogEntry;
 import org.codespeak.distribution.client.data.ClientCheckVersionResponse;
 import org.codespeak.distribution.client.data.Dependency;
 import org.codespeak.distribution.client.data.FileInfo;
 import org.codespeak.distribution.client.data.Program;
+import org.codespeak.distribution.client.util.JsonReader;
 
 /**
- * An enum containing all query types used by this client
+ * A class containing all query types used by this client. Each query type
+ * carries the decoder for the contents of its response, so the type of data
+ * returned by a query is known where the query is made
  *
  * @author Vector
+ * @param <T> the type of data returned by the query
  */
-public enum QueryTypes {
-    
-    GET_DEPENDENCIES("get_dependencies", "Getting Dependencies", Dependency.class, true),
-    GET_CATEGORIES("get_categories", "Getting Categories", Category.class, true),
-    GET_PROGRAMS("get_programs", "Getting Programs", Program.class, true),
-    GET_PROGRAM_FILES("get_program_files", "Getting Program Files", FileInfo.class, true),
-    GET_PROGRAM_CHANGELOG("get_program_changelog", "Getting Program Changelog", ChangelogEntry.class, true),
-    CHECK_CLIENT_VERSION("check_client_version", "Checking Client Version", ClientCheckVersionResponse.class),
-    GET_CLIENT_CHANGELOG("get_client_changelog", "Getting Client Changelog", ChangelogEntry.class, true);
-    
+public final class QueryTypes<T> {
+
+    public static final QueryTypes<List<Dependency>> GET_DEPENDENCIES
+            = new QueryTypes<List<Dependency>>("get_dependencies", "Getting Dependencies", Decoder.listOf(Dependency::read));
+    public static final QueryTypes<List<Category>> GET_CATEGORIES
+            = new QueryTypes<List<Category>>("get_categories", "Getting Categories", Decoder.listOf(Category::read));
+    public static final QueryTypes<List<Program>> GET_PROGRAMS
+            = new QueryTypes<List<Program>>("get_programs", "Getting Programs",
+                                            Decoder.listOf(Decoder.withCopier((JsonReader reader) -> Program.read(reader, false),
+                                                                              Program::copy)));
+    public static final QueryTypes<List<FileInfo>> GET_PROGRAM_FILES
+            = new QueryTypes<List<FileInfo>>("get_program_files", "Getting Program Files", Decoder.listOf(FileInfo::read));
+    public static final QueryTypes<List<ChangelogEntry>> GET_PROGRAM_CHANGELOG
+            = new QueryTypes<List<ChangelogEntry>>("get_program_changelog", "Getting Program Changelog", Decoder.listOf(ChangelogEntry::read));
+    public static final QueryTypes<ClientCheckVersionResponse> CHECK_CLIENT_VERSION
+            = new QueryTypes<ClientCheckVersionResponse>("check_client_version", "Checking Client Version", ClientCheckVersionResponse::read);
+    public static final QueryTypes<List<ChangelogEntry>> GET_CLIENT_CHANGELOG
+            = new QueryTypes<List<ChangelogEntry>>("get_client_changelog", "Getting Client Changelog", Decoder.listOf(ChangelogEntry::read));
+
     private final String name;
     private final String title;
-    private final Class dataClazz;
-    private final boolean listQuery;
-    
-    private QueryTypes(String name, String title, Class dataClazz) {
-        this(name, title, dataClazz, false);
-    }
-    
-    private QueryTypes(String name, String title, Class dataClazz, boolean informationListQuery) {
+    private final Decoder<T> decoder;
+
+    private QueryTypes(String name, String title, Decoder<T> decoder) {
         this.name = name;
         this.title = title;
-        this.dataClazz = dataClazz;
-        this.listQuery = informationListQuery;
+        this.decoder = decoder;
     }
-    
+
     /**
      * Gets the name of this query
      * @return name of this query
@@ -53,21 +61,13 @@ public enum QueryTypes {
     public String getTitle() {
         return title;
     }
-    
-    /**
-     * Gets the class representing the kind of data returned with this query
-     * @return class representing the kind of data in query response
-     */
-    public Class getDataClass() {
-        return dataClazz;
-    }
-    
+
     /**
-     * Gets whether the data of this query is a list of items
-     * @return whether the data of this query is a list of items
+     * Gets the decoder for the contents of the response of this query
+     * @return decoder for the contents of the response of this query
      */
-    public boolean isListQuery() {
-        return listQuery;
+    public Decoder<T> getDecoder() {
+        return decoder;
     }
-    
+
 }
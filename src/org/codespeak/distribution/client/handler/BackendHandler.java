@@ -1,28 +1,46 @@
 package org.codespeak.distribution.client.handler;
 
-import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FilterReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.net.URL;
+import java.io.Reader;
+import java.io.StringReader;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import javax.net.ssl.HttpsURLConnection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.codespeak.distribution.client.Configuration;
-import org.codespeak.distribution.client.data.Category;
-import org.codespeak.distribution.client.data.ChangelogEntry;
-import org.codespeak.distribution.client.data.ClientCheckVersionResponse;
-import org.codespeak.distribution.client.data.Dependency;
-import org.codespeak.distribution.client.data.FileInfo;
-import org.codespeak.distribution.client.data.Program;
+import org.codespeak.distribution.client.Settings;
+import org.codespeak.distribution.client.Settings.SettingFields;
+import org.codespeak.distribution.client.data.query.Decoder;
 import org.codespeak.distribution.client.data.query.ErrorType;
+import org.codespeak.distribution.client.handler.transport.BackendMetrics;
+import org.codespeak.distribution.client.handler.transport.CircuitBreaker;
+import org.codespeak.distribution.client.handler.transport.ContentEncoding;
+import org.codespeak.distribution.client.handler.transport.EndpointTransport;
+import org.codespeak.distribution.client.handler.transport.MirrorTransport;
+import org.codespeak.distribution.client.handler.transport.ResilientTransport;
+import org.codespeak.distribution.client.handler.transport.Transport;
+import org.codespeak.distribution.client.handler.transport.TransportResponse;
+import org.codespeak.distribution.client.handler.transport.URLConnectionTransport;
 import org.codespeak.distribution.client.objects.ClientException;
 import org.codespeak.distribution.client.data.query.QueryTypes;
+import org.codespeak.distribution.client.util.JsonReader;
 import org.codespeak.distribution.client.util.StringUtil;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 /**
  * A class that handles interactions with the backend
@@ -31,105 +49,502 @@ import org.json.JSONObject;
  */
 public class BackendHandler {
 
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private static final long RESPONSE_CACHE_SIZE = 8 * 1024 * 1024;
+    private static final long DEFAULT_ASYNC_TIMEOUT_SECONDS = 60;
+    private static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+    private static final long CIRCUIT_OPEN_MILLIS = 30000;
+    private static final int MIRROR_CONNECT_TIMEOUT = 2000;
+    private static final String ENDPOINTS_PROPERTY = "codespeak.endpoints";
+    
+    private static final BackendMetrics metrics = new BackendMetrics();
+    private static final CircuitBreaker circuitBreaker = new CircuitBreaker(CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_OPEN_MILLIS, metrics);
+    private static EndpointTransport endpointTransport = null;
+    private static final Transport originTransport = createOriginTransport();
+    private static Transport transport = createDefaultTransport();
+    private static final ResponseCache responseCache = new ResponseCache(RESPONSE_CACHE_SIZE);
+    private static final ExecutorService asyncExecutor = Executors.newCachedThreadPool((Runnable runnable) -> {
+        return createDaemonThread(runnable, "Backend Worker");
+    });
+    private static final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor((Runnable runnable) -> {
+        return createDaemonThread(runnable, "Backend Timeout");
+    });
+    
     /**
-     * Queries the backend and gets a response
-     * @param <T> An object that extends QueryResponse
-     * @param queryType the type of query to make
-     * @return a QueryResponse object containing the response of the query
-     * @throws org.codespeak.distribution.client.objects.ClientException if
-     * there is an error during the query
+     * A reader that keeps a copy of everything read through it
      */
-    public static <T> T getDataFromQuery(QueryTypes queryType) throws ClientException {
-        return BackendHandler.getDataFromQuery(queryType, "");
+    private static class RecordingReader extends FilterReader {
+        
+        private final StringBuilder recording = new StringBuilder();
+        
+        private RecordingReader(Reader in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            
+            if (c != -1) {
+                recording.append((char) c);
+            }
+            
+            return c;
+        }
+        
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            
+            if (count > 0) {
+                recording.append(buffer, offset, count);
+            }
+            
+            return count;
+        }
+        
+        private String getRecording() {
+            return recording.toString();
+        }
+        
+    }
+    
+    private static Thread createDaemonThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        
+        return thread;
     }
     
     /**
-     * Gets data from the backend using the specified query
-     * @param <T> A generic object representing the data from the query
-     * @param queryType the type of query to make
-     * @param otherPart an additional part of the query
-     * @return a generic object representing the data from the query
-     * @throws org.codespeak.distribution.client.objects.ClientException if
-     * there is an error during the query
+     * Gets the base URLs of the endpoints serving the backend. The endpoints
+     * can be set with a system property, such as to point tests at a local
+     * server, or in the settings as a comma separated list
      */
-    public static <T> T getDataFromQuery(QueryTypes queryType, String otherPart) throws ClientException {
-        String fullQuery = Configuration.BACKEND_URL + "?query=" + queryType.getName() + otherPart;
-        URL url = null;
-        HttpsURLConnection connection = null;
+    private static List<String> getEndpointURLs() {
+        String endpoints = System.getProperty(ENDPOINTS_PROPERTY);
         
-        String title =  "An error occurred while performing query: " + queryType.getTitle() + ".";
-        ErrorType type = ErrorType.ERROR_SEVERE;
-
-        try {
-            url = new URL(fullQuery);
-            connection = (HttpsURLConnection) url.openConnection();  
-            connection.setRequestProperty("User-Agent", "CodeSpeakDistributionClient/" + Configuration.PROGRAM_VERSION);
-        } catch (IOException ex) {
-            throw new ClientException(type, title, fullQuery, ex);
+        if (StringUtil.isNullOrEmpty(endpoints)) {
+            endpoints = Configuration.getSettings().getValue(SettingFields.ENDPOINTS);
         }
         
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
-            StringBuilder sb = new StringBuilder();
-            String input;
-            
-            while ((input = reader.readLine()) != null) {
-                sb.append(input);
+        List<String> endpointURLs = new ArrayList<String>();
+        
+        if (!StringUtil.isNullOrEmpty(endpoints)) {
+            for (String endpoint : endpoints.split(",")) {
+                if (!endpoint.trim().isEmpty()) {
+                    endpointURLs.add(endpoint.trim());
+                }
             }
+        }
+        
+        if (endpointURLs.isEmpty()) {
+            endpointURLs.add(Configuration.DISTRIBUTION_URL);
+        }
+        
+        return endpointURLs;
+    }
+    
+    private static Transport createOriginTransport() {
+        Settings settings = Configuration.getSettings();
+        int connectTimeout = settings.getValue(SettingFields.CONNECT_TIMEOUT);
+        int readTimeout = settings.getValue(SettingFields.READ_TIMEOUT);
+        int requestAttempts = settings.getValue(SettingFields.REQUEST_ATTEMPTS);
+        String probePath = Configuration.BACKEND_URL.substring(Configuration.DISTRIBUTION_URL.length());
+        
+        endpointTransport = new EndpointTransport(Configuration.DISTRIBUTION_URL, getEndpointURLs(), probePath,
+                                                  new URLConnectionTransport(connectTimeout, readTimeout));
+        
+        return new ResilientTransport(endpointTransport, requestAttempts, circuitBreaker, metrics);
+    }
+    
+    private static Transport createDefaultTransport() {
+        Settings settings = Configuration.getSettings();
+        String mirrorURL = settings.getValue(SettingFields.MIRROR_URL);
+        
+        if (StringUtil.isNullOrEmpty(mirrorURL)) {
+            return originTransport;
+        }
+        
+        // A mirror is on the local network, so it is given up on quickly
+        int readTimeout = settings.getValue(SettingFields.READ_TIMEOUT);
+        Transport mirrorTransport = new URLConnectionTransport(MIRROR_CONNECT_TIMEOUT, readTimeout);
+        
+        return new MirrorTransport(mirrorURL, mirrorTransport, originTransport);
+    }
+    
+    /**
+     * Runs a call on the async executor. The returned future fails with a
+     * TimeoutException if the call does not finish in time, and the call is
+     * interrupted if the future is cancelled or times out
+     */
+    private static <T> CompletableFuture<T> submitAsync(Callable<T> call, long timeout, TimeUnit unit) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        
+        Future<?> task = asyncExecutor.submit(() -> {
+            try {
+                T result = call.call();
+                
+                // A channel or response opened after the caller gave up on it
+                // would never be closed otherwise
+                if (!future.complete(result) && result instanceof Closeable) {
+                    ((Closeable) result).close();
+                }
+            } catch (Exception ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        
+        ScheduledFuture<?> timer = timeoutScheduler.schedule(() -> {
+            future.completeExceptionally(new TimeoutException("Backend call did not finish within " + timeout + " " + unit.toString().toLowerCase() + "."));
+        }, timeout, unit);
+        
+        future.whenComplete((T result, Throwable throwable) -> {
+            timer.cancel(false);
             
-            String response = sb.toString();
-            JSONObject json = new JSONObject(response);
-            int statusCode = json.getInt("status");
+            if (throwable instanceof CancellationException || throwable instanceof TimeoutException) {
+                task.cancel(true);
+            }
+        });
+        
+        return future;
+    }
+    
+    private static Map<String, String> createRequestHeaders() {
+        Map<String, String> headers = new HashMap<String, String>();
+        
+        headers.put("User-Agent", "CodeSpeakDistributionClient/" + Configuration.PROGRAM_VERSION);
+        headers.put("Accept-Encoding", ContentEncoding.ACCEPTED_ENCODINGS);
+        
+        return headers;
+    }
+    
+    private static TransportResponse getResponse(String url, Map<String, String> headers) throws IOException {
+        return ContentEncoding.decode(transport.get(url, headers), metrics);
+    }
+    
+    private static TransportResponse openResponse(String url) throws IOException {
+        return openResponse(url, createRequestHeaders());
+    }
+    
+    private static TransportResponse openResponse(String url, Map<String, String> headers) throws IOException {
+        TransportResponse response = getResponse(url, headers);
+        
+        if (!response.isSuccessful()) {
+            response.discard();
             
-            if (statusCode == 1) {
-                Class dataClass = queryType.getDataClass();
-                
-                if (queryType.isListQuery()) {
-                    JSONArray jsonContents = json.getJSONArray("contents");
-                    List<T> listData = new ArrayList<T>();
+            throw new IOException("Server returned HTTP status " + response.getStatusCode() + " for URL: " + url);
+        }
+        
+        return response;
+    }
+    
+    private static String getRemoteFileURL(String slug, String relativeFilePath) {
+        String remotePath = Configuration.DISTRIBUTION_URL;
+        
+        if (!StringUtil.isNullOrEmpty(slug)) {
+            remotePath += "/files/" + slug;
+        } else {
+            remotePath += "/client";
+        }
+        
+        return remotePath + "/" + relativeFilePath;
+    }
+    
+    private static String getQueryURL(QueryTypes<?> queryType, String otherPart) {
+        return Configuration.BACKEND_URL + "?query=" + queryType.getName() + otherPart;
+    }
+    
+    private static String getQueryErrorTitle(QueryTypes<?> queryType) {
+        return "An error occurred while performing query: " + queryType.getTitle() + ".";
+    }
+    
+    private static <T> T readResponse(JsonReader reader, String fullQuery, String title, Decoder<T> contentsDecoder)
+            throws IOException, ClientException {
+        int statusCode = 0;
+        boolean hasStatus = false;
+        int errorCode = 0;
+        String errorMessage = "";
+        boolean hasContents = false;
+        T contents = null;
+        String pendingContents = null;
+        
+        reader.beginObject();
+        
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "status":
+                    statusCode = reader.nextInt();
+                    hasStatus = true;
                     
-                    for (int i = 0; i < jsonContents.length(); i++) {
-                        JSONObject obj = jsonContents.getJSONObject(i);
-                        
-                        if (dataClass == Dependency.class) {
-                            listData.add((T) Dependency.fromJSON(obj));
-                        } else if (dataClass == Category.class) {
-                            listData.add((T) Category.fromJSON(obj));
-                        } else if (dataClass == Program.class) {
-                            listData.add((T) Program.fromJSON(obj, false));
-                        } else if (dataClass == FileInfo.class) {
-                            listData.add((T) FileInfo.fromJSON(obj));
-                        } else if (dataClass == ChangelogEntry.class) {
-                            listData.add((T) ChangelogEntry.fromJSON(obj));
-                        }
-                    }
+                    break;
+                case "error_code":
+                    errorCode = reader.nextInt();
                     
-                    return (T) listData;
-                } else {
-                    JSONObject jsonContents = json.getJSONObject("contents");
-                    Object obj = null;
-
-                    if (dataClass == Dependency.class) {
-                        obj = Dependency.fromJSON(jsonContents);
-                    } else if (dataClass == Category.class) {
-                        obj = Category.fromJSON(jsonContents);
-                    } else if (dataClass == Program.class) {
-                        obj = Program.fromJSON(jsonContents, false);
-                    } else if (dataClass == ClientCheckVersionResponse.class) {
-                        obj = ClientCheckVersionResponse.fromJSON(jsonContents);
+                    break;
+                case "error_message":
+                    errorMessage = reader.nextString();
+                    
+                    break;
+                case "contents":
+                    // The contents of a failed query are not decoded, as they
+                    // may not have the expected shape. Contents that come
+                    // before the status are kept until the status is known
+                    if ((hasStatus && statusCode != 1) || reader.peek() == JsonReader.Token.NULL) {
+                        reader.skipValue();
+                    } else if (hasStatus) {
+                        contents = contentsDecoder.decode(reader);
+                        hasContents = true;
+                    } else {
+                        pendingContents = reader.nextValueAsJson();
                     }
                     
-                    return (T) obj;
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        
+        reader.endObject();
+        
+        if (statusCode != 1) {
+            ErrorType type = ErrorType.fromCode(errorCode);
+            throw new ClientException(type, title, fullQuery, new Exception(errorMessage));
+        }
+        
+        if (pendingContents != null) {
+            contents = contentsDecoder.decode(new JsonReader(new StringReader(pendingContents)));
+            hasContents = true;
+        }
+        
+        if (!hasContents) {
+            throw new IOException("Response has no contents.");
+        }
+        
+        return contents;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> T getCachedContents(ResponseCache.Entry entry) {
+        // Entries are keyed by the full query, so the contents of an entry
+        // are always of the type returned by that query
+        return (T) entry.getValue();
+    }
+    
+    private static <T> T decodeResponse(String fullQuery, String title, Decoder<T> contentsDecoder) throws ClientException {
+        ErrorType type = ErrorType.ERROR_SEVERE;
+        ResponseCache.Entry cachedEntry = responseCache.get(fullQuery);
+        Map<String, String> headers = createRequestHeaders();
+        
+        if (cachedEntry != null) {
+            if (cachedEntry.getETag() != null) {
+                headers.put("If-None-Match", cachedEntry.getETag());
+            }
+            
+            if (cachedEntry.getLastModified() != null) {
+                headers.put("If-Modified-Since", cachedEntry.getLastModified());
+            }
+        }
+        
+        try (TransportResponse response = getResponse(fullQuery, headers)) {
+            if (response.getStatusCode() == HTTP_NOT_MODIFIED && cachedEntry != null) {
+                responseCache.recordHit();
+                
+                T contents = getCachedContents(cachedEntry);
+                
+                // Responses loaded from the cache file are decoded the first
+                // time they are used and kept decoded from then on
+                if (contents == null) {
+                    JsonReader reader = new JsonReader(new StringReader(cachedEntry.getBody()));
+                    
+                    contents = readResponse(reader, fullQuery, title, contentsDecoder);
+                    responseCache.put(fullQuery, cachedEntry.getETag(), cachedEntry.getLastModified(),
+                                      cachedEntry.getBody(), contents);
                 }
-            } else {
-                type = ErrorType.fromCode(json.getInt("error_code"));
-                String errorMessage = json.getString("error_message");
-                throw new ClientException(type, title, fullQuery, new Exception(errorMessage));
+                
+                return contentsDecoder.copy(contents);
+            }
+            
+            if (!response.isSuccessful()) {
+                throw new IOException("Server returned HTTP status " + response.getStatusCode() + " for URL: " + fullQuery);
+            }
+            
+            responseCache.recordMiss();
+            
+            String eTag = response.getHeader("ETag");
+            String lastModified = response.getHeader("Last-Modified");
+            Reader bodyReader = new InputStreamReader(response.getBody(), StandardCharsets.UTF_8);
+            RecordingReader recordingReader = null;
+            
+            // The body is only kept while it is decoded if it can be cached
+            if (eTag != null || lastModified != null) {
+                recordingReader = new RecordingReader(bodyReader);
+                bodyReader = recordingReader;
             }
-        } catch (IOException | JSONException ex) {
+            
+            T contents = readResponse(new JsonReader(bodyReader), fullQuery, title, contentsDecoder);
+            
+            if (recordingReader != null) {
+                responseCache.put(fullQuery, eTag, lastModified, recordingReader.getRecording(), contents);
+                
+                return contentsDecoder.copy(contents);
+            }
+            
+            return contents;
+        } catch (IOException ex) {
             throw new ClientException(type, title, fullQuery, ex);
         }
     }
+    
+    /**
+     * Gets the cache of query responses
+     * @return cache of query responses
+     */
+    public static ResponseCache getResponseCache() {
+        return responseCache;
+    }
+    
+    /**
+     * Gets the metrics of the requests made to the backend
+     * @return metrics of the requests made to the backend
+     */
+    public static BackendMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Gets the circuit breaker guarding the requests made to the backend
+     * @return circuit breaker guarding the requests made to the backend
+     */
+    public static CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+    
+    /**
+     * Gets the endpoints serving the backend in the order they are tried
+     * @return endpoints serving the backend
+     */
+    public static List<EndpointTransport.Endpoint> getEndpoints() {
+        return endpointTransport.getEndpoints();
+    }
+    
+    /**
+     * Probes every endpoint serving the backend, so the fastest reachable
+     * endpoint is used first
+     */
+    public static void probeEndpoints() {
+        endpointTransport.probeEndpoints(createRequestHeaders());
+    }
+    
+    /**
+     * Gets the transport that reaches the backend directly, without going
+     * through a mirror
+     * @return transport that reaches the backend directly
+     */
+    public static Transport getOriginTransport() {
+        return originTransport;
+    }
+    
+    /**
+     * Gets the transport used to reach the backend
+     * @return transport used to reach the backend
+     */
+    public static Transport getTransport() {
+        return transport;
+    }
+    
+    /**
+     * Sets the transport used to reach the backend. This allows the backend
+     * to be replaced with a local stub
+     * @param transport transport used to reach the backend
+     */
+    public static void setTransport(Transport transport) {
+        BackendHandler.transport = transport;
+    }
+    
+    /**
+     * Queries the backend and gets a response
+     * @param <T> the type of data returned by the query
+     * @param queryType the type of query to make
+     * @return the data returned by the query
+     * @throws org.codespeak.distribution.client.objects.ClientException if
+     * there is an error during the query
+     */
+    public static <T> T getDataFromQuery(QueryTypes<T> queryType) throws ClientException {
+        return BackendHandler.getDataFromQuery(queryType, "");
+    }
+    
+    /**
+     * Gets data from the backend using the specified query
+     * @param <T> the type of data returned by the query
+     * @param queryType the type of query to make
+     * @param otherPart an additional part of the query
+     * @return the data returned by the query
+     * @throws org.codespeak.distribution.client.objects.ClientException if
+     * there is an error during the query
+     */
+    public static <T> T getDataFromQuery(QueryTypes<T> queryType, String otherPart) throws ClientException {
+        return BackendHandler.getDataFromQuery(queryType, otherPart, queryType.getDecoder());
+    }
+    
+    /**
+     * Gets data from the backend using the specified query, decoding the
+     * contents of the response with the specified decoder instead of the
+     * decoder of the query
+     * @param <T> the type of data returned by the query
+     * @param queryType the type of query to make
+     * @param otherPart an additional part of the query
+     * @param contentsDecoder decoder for the contents of the response
+     * @return the data decoded from the query
+     * @throws org.codespeak.distribution.client.objects.ClientException if
+     * there is an error during the query
+     */
+    public static <T> T getDataFromQuery(QueryTypes<T> queryType, String otherPart, Decoder<T> contentsDecoder) throws ClientException {
+        String fullQuery = getQueryURL(queryType, otherPart);
+        String title = getQueryErrorTitle(queryType);
+        
+        return decodeResponse(fullQuery, title, contentsDecoder);
+    }
 
+    /**
+     * Queries the backend without blocking the calling thread
+     * @param <T> the type of data returned by the query
+     * @param queryType the type of query to make
+     * @return future completed with the data returned by the query
+     */
+    public static <T> CompletableFuture<T> getDataFromQueryAsync(QueryTypes<T> queryType) {
+        return getDataFromQueryAsync(queryType, "");
+    }
+    
+    /**
+     * Queries the backend without blocking the calling thread, using the
+     * default timeout
+     * @param <T> the type of data returned by the query
+     * @param queryType the type of query to make
+     * @param otherPart an additional part of the query
+     * @return future completed with the data returned by the query
+     */
+    public static <T> CompletableFuture<T> getDataFromQueryAsync(QueryTypes<T> queryType, String otherPart) {
+        return getDataFromQueryAsync(queryType, otherPart, DEFAULT_ASYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Queries the backend without blocking the calling thread. Cancelling the
+     * returned future interrupts the query
+     * @param <T> the type of data returned by the query
+     * @param queryType the type of query to make
+     * @param otherPart an additional part of the query
+     * @param timeout time to wait for the query before it fails
+     * @param unit unit of the timeout
+     * @return future completed with the data returned by the query, or
+     * completed exceptionally with a ClientException or TimeoutException
+     */
+    public static <T> CompletableFuture<T> getDataFromQueryAsync(QueryTypes<T> queryType, String otherPart, long timeout, TimeUnit unit) {
+        return submitAsync(() -> getDataFromQuery(queryType, otherPart), timeout, unit);
+    }
+    
     /**
      * Gets a readable byte channel of a remote client file
      * @param relativeFilePath relative file path of remote client file
@@ -150,19 +565,111 @@ public class BackendHandler {
      * error occurred while getting remote file channel
      */
     public static ReadableByteChannel getRemoteFileChannel(String slug, String relativeFilePath) throws ClientException {
-        String remotePath = Configuration.DISTRIBUTION_URL;
+        return getRemoteFileChannelFromURL(getRemoteFileURL(slug, relativeFilePath));
+    }
+    
+    /**
+     * Gets a readable byte channel of a remote client or program file without
+     * blocking the calling thread, using the default timeout to open it
+     * @param slug the slug of a program, or an empty string for a client file
+     * @param relativeFilePath path to the file
+     * @return future completed with a readable byte channel of the file
+     */
+    public static CompletableFuture<ReadableByteChannel> getRemoteFileChannelAsync(String slug, String relativeFilePath) {
+        return submitAsync(() -> getRemoteFileChannel(slug, relativeFilePath), DEFAULT_ASYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Gets the response of a remote program file starting at the specified
+     * offset. The returned response has a status of 206 if the backend honored
+     * the range, or 200 if the whole file is being sent instead
+     * @param slug the slug of a program
+     * @param relativeFilePath path to the program file
+     * @param checksum checksum of the program file, or null if it is not
+     * known. A mirror uses it to find and check the file
+     * @param offset number of bytes of the file that are already downloaded
+     * @return response containing the requested part of the program file
+     * @throws org.codespeak.distribution.client.objects.ClientException if an
+     * error occurred while getting the remote file
+     */
+    public static TransportResponse getRemoteFileResponse(String slug, String relativeFilePath, String checksum, long offset)
+            throws ClientException {
+        String title =  "An exception occurred while fetching a remote file.";
+        ErrorType type = ErrorType.ERROR_SEVERE;
+        String remoteURL = getRemoteFileURL(slug, relativeFilePath).replace(" ", "%20");
+        Map<String, String> headers = createRequestHeaders();
         
-        if (!StringUtil.isNullOrEmpty(slug)) {
-            remotePath += "/files/" + slug;
-        } else {
-            remotePath += "/client";
+        if (!StringUtil.isNullOrEmpty(checksum)) {
+            headers.put(MirrorTransport.CHECKSUM_HEADER, checksum);
         }
         
-        remotePath += "/" + relativeFilePath;
-        
-        return getRemoteFileChannelFromURL(remotePath);
+        try {
+            if (offset > 0) {
+                Map<String, String> rangeHeaders = new HashMap<String, String>(headers);
+                rangeHeaders.put("Range", "bytes=" + offset + "-");
+                
+                // The range must be of the file itself rather than of a
+                // compressed copy of it, so the resumed bytes line up with
+                // the decompressed bytes already downloaded
+                rangeHeaders.put("Accept-Encoding", ContentEncoding.IDENTITY);
+                
+                TransportResponse response = getResponse(remoteURL, rangeHeaders);
+                
+                if (response.isSuccessful()) {
+                    return response;
+                }
+                
+                response.discard();
+                
+                // The partial file is no longer a prefix of the remote file,
+                // so the whole file is requested instead
+                if (response.getStatusCode() != HTTP_RANGE_NOT_SATISFIABLE) {
+                    throw new IOException("Server returned HTTP status " + response.getStatusCode() + " for URL: " + remoteURL);
+                }
+            }
+            
+            return openResponse(remoteURL, headers);
+        } catch (IOException ex) {
+            throw new ClientException(type, title, remoteURL, ex);
+        }
     }
 
+    /**
+     * Gets the response of a patch that turns one version of a program file
+     * into another. Patches are found by the checksums of both versions
+     * @param slug the slug of a program
+     * @param fromChecksum checksum of the version of the file that is installed
+     * @param toChecksum checksum of the version of the file being updated to
+     * @return response containing the patch, or null if the backend has no
+     * patch between the two versions
+     * @throws org.codespeak.distribution.client.objects.ClientException if an
+     * error occurred while getting the patch
+     */
+    public static TransportResponse getRemotePatchResponse(String slug, String fromChecksum, String toChecksum) throws ClientException {
+        String title =  "An exception occurred while fetching a patch.";
+        ErrorType type = ErrorType.ERROR_SEVERE;
+        String remoteURL = Configuration.DISTRIBUTION_URL + "/patches/" + slug + "/"
+                           + fromChecksum.toLowerCase() + "-" + toChecksum.toLowerCase();
+        
+        try {
+            TransportResponse response = getResponse(remoteURL, createRequestHeaders());
+            
+            if (response.isSuccessful()) {
+                return response;
+            }
+            
+            response.discard();
+            
+            if (response.getStatusCode() == HTTP_NOT_FOUND) {
+                return null;
+            }
+            
+            throw new IOException("Server returned HTTP status " + response.getStatusCode() + " for URL: " + remoteURL);
+        } catch (IOException ex) {
+            throw new ClientException(type, title, remoteURL, ex);
+        }
+    }
+    
     /**
      * Gets a file channel from a URL
      * @param remoteURL URL of the file
@@ -176,11 +683,9 @@ public class BackendHandler {
         remoteURL = remoteURL.replace(" ", "%20");
 
         try {
-            URL url = new URL(remoteURL);
-            HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();  
-            connection.setRequestProperty("User-Agent", "CodeSpeakDistributionClient/" + Configuration.PROGRAM_VERSION);
+            TransportResponse response = openResponse(remoteURL);
             
-            return Channels.newChannel(connection.getInputStream());
+            return Channels.newChannel(response.getBody());
         } catch (IOException ex) {
             throw new ClientException(type, title, remoteURL, ex);
         }
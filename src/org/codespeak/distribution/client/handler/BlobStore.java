@@ -0,0 +1,344 @@
+package org.codespeak.distribution.client.handler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import org.codespeak.distribution.client.Configuration;
+import org.codespeak.distribution.client.data.FileInfo;
+import org.codespeak.distribution.client.util.MiscUtil;
+import org.codespeak.distribution.client.util.StringUtil;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A class that keeps one copy of every program file by its checksum, so a
+ * file shipped by several programs is only downloaded once. Program folders
+ * get hard links to the stored files, or copies where links are not
+ * supported. Text files, which users may edit, are always copied, as an edit
+ * through a link would change the stored file and every program sharing it.
+ * The files of each installed program are recorded as references, and stored
+ * files without references are deleted once a program is uninstalled
+ *
+ * @author Vector
+ */
+public class BlobStore {
+
+    private static final Logger LOGGER = Logger.getLogger(BlobStore.class.getName());
+
+    private static final String REFERENCES_FILE = "references.json";
+
+    // Maps the slug of each program to the path and checksum of its files
+    private static Map<String, Map<String, String>> references = null;
+
+    // Maps the slug of each program being installed, updated or repaired to
+    // the checksums of the stored files it uses before they are referenced
+    private static final Map<String, Set<String>> pendingReferences = new HashMap<String, Set<String>>();
+
+    private static Map<String, Map<String, String>> getReferences() {
+        if (references == null) {
+            references = loadReferences();
+        }
+
+        return references;
+    }
+
+    private static Map<String, Map<String, String>> loadReferences() {
+        Map<String, Map<String, String>> loadedReferences = new HashMap<String, Map<String, String>>();
+        File referencesFile = Paths.get(Configuration.BLOBS_FOLDER, REFERENCES_FILE).toFile();
+
+        if (!referencesFile.exists()) {
+            return loadedReferences;
+        }
+
+        try {
+            byte[] bytes = Files.readAllBytes(referencesFile.toPath());
+            JSONObject json = new JSONObject(new String(bytes, StandardCharsets.UTF_8));
+
+            for (String slug : json.keySet()) {
+                JSONObject jsonFiles = json.getJSONObject(slug);
+                Map<String, String> files = new HashMap<String, String>();
+
+                for (String path : jsonFiles.keySet()) {
+                    files.put(path, jsonFiles.getString(path));
+                }
+
+                loadedReferences.put(slug, files);
+            }
+        } catch (IOException | JSONException ex) {
+            LOGGER.warning("Unable to read blob references: " + ex.getMessage());
+        }
+
+        return loadedReferences;
+    }
+
+    private static void saveReferences() {
+        Path referencesPath = Paths.get(Configuration.BLOBS_FOLDER, REFERENCES_FILE);
+        Path tempPath = Paths.get(referencesPath + ".tmp");
+        JSONObject json = new JSONObject();
+
+        for (Map.Entry<String, Map<String, String>> entry : getReferences().entrySet()) {
+            json.put(entry.getKey(), new JSONObject(entry.getValue()));
+        }
+
+        MiscUtil.ensurePathExists(referencesPath.getParent());
+
+        try {
+            try (FileOutputStream out = new FileOutputStream(tempPath.toFile())) {
+                out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+            }
+
+            try {
+                Files.move(tempPath, referencesPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempPath, referencesPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            LOGGER.warning("Unable to save blob references: " + ex.getMessage());
+        }
+    }
+
+    private static void linkOrCopy(Path blobPath, Path targetPath) throws IOException {
+        Path parentPath = targetPath.getParent();
+
+        if (parentPath != null) {
+            MiscUtil.ensurePathExists(parentPath);
+        }
+
+        Files.deleteIfExists(targetPath);
+
+        if (MiscUtil.isTextFile(targetPath)) {
+            Files.copy(blobPath, targetPath);
+
+            return;
+        }
+
+        try {
+            Files.createLink(targetPath, blobPath);
+        } catch (IOException | UnsupportedOperationException ex) {
+            Files.copy(blobPath, targetPath);
+        }
+    }
+
+    private static synchronized void addPendingReference(String slug, String checksum) {
+        Set<String> checksums = pendingReferences.get(slug);
+
+        if (checksums == null) {
+            checksums = new HashSet<String>();
+            pendingReferences.put(slug, checksums);
+        }
+
+        checksums.add(checksum.toLowerCase());
+    }
+
+    private static List<String> getReferencingPrograms(String checksum) {
+        List<String> slugs = new ArrayList<String>();
+
+        for (Map.Entry<String, Map<String, String>> entry : getReferences().entrySet()) {
+            if (entry.getValue().containsValue(checksum.toLowerCase())) {
+                slugs.add(entry.getKey());
+            }
+        }
+
+        return slugs;
+    }
+
+    /**
+     * Gets the path of the stored file with the specified checksum
+     * @param checksum checksum of the file
+     * @return path of the stored file
+     */
+    public static Path getBlobPath(String checksum) {
+        String name = checksum.toLowerCase();
+
+        return Paths.get(Configuration.BLOBS_FOLDER, name.substring(0, Math.min(2, name.length())), name);
+    }
+
+    /**
+     * Creates a file from the stored file with the specified checksum. A
+     * stored file that no longer matches its checksum, such as one changed
+     * through a link in a program folder, is deleted instead of used
+     * @param slug slug of the program the file is created for
+     * @param checksum checksum of the file
+     * @param targetPath path the file is created at. It is replaced if it
+     * exists
+     * @return if the file was created
+     */
+    public static boolean materialize(String slug, String checksum, Path targetPath) {
+        if (StringUtil.isNullOrEmpty(checksum)) {
+            return false;
+        }
+
+        Path blobPath = getBlobPath(checksum);
+
+        if (!blobPath.toFile().isFile()) {
+            return false;
+        }
+
+        if (!checksum.equalsIgnoreCase(MiscUtil.getFileChecksum(blobPath))) {
+            blobPath.toFile().delete();
+
+            // Programs linked to the stored file share the change, and have
+            // it undone the next time they are repaired
+            synchronized (BlobStore.class) {
+                LOGGER.warning("Stored file " + checksum + " was changed in place. Programs sharing it need to be repaired: "
+                               + getReferencingPrograms(checksum));
+            }
+
+            return false;
+        }
+
+        addPendingReference(slug, checksum);
+
+        try {
+            linkOrCopy(blobPath, targetPath);
+
+            return true;
+        } catch (IOException ex) {
+            // The stored file may have been collected in the meantime, in
+            // which case the file is downloaded instead
+            return false;
+        }
+    }
+
+    /**
+     * Adds a downloaded file to the store and creates a file from it at the
+     * target path. The downloaded file must already match its checksum, and
+     * is moved into the store
+     * @param slug slug of the program the file is created for
+     * @param sourcePath path of the downloaded file
+     * @param checksum checksum of the file
+     * @param targetPath path the file is created at. It is replaced if it
+     * exists
+     * @throws IOException thrown if the file cannot be created
+     */
+    public static void put(String slug, Path sourcePath, String checksum, Path targetPath) throws IOException {
+        Path blobPath = getBlobPath(checksum);
+
+        // The stored file is kept by a pending reference until the program
+        // using it is committed and its references are recorded, so an
+        // uninstall running at the same time does not collect it
+        addPendingReference(slug, checksum);
+        linkOrCopy(sourcePath, targetPath);
+
+        // Collecting garbage deletes empty folders, so the folder of the
+        // stored file is created and filled while holding the lock
+        synchronized (BlobStore.class) {
+            MiscUtil.ensurePathExists(blobPath.getParent());
+
+            if (blobPath.toFile().exists()) {
+                Files.delete(sourcePath);
+            } else {
+                Files.move(sourcePath, blobPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Records that the specified files belong to a program
+     * @param slug slug of the program
+     * @param files files of the program
+     */
+    public static synchronized void addReferences(String slug, List<FileInfo> files) {
+        Map<String, String> programReferences = getReferences().get(slug);
+
+        pendingReferences.remove(slug);
+
+        if (programReferences == null) {
+            programReferences = new HashMap<String, String>();
+            getReferences().put(slug, programReferences);
+        }
+
+        for (FileInfo file : files) {
+            if (!StringUtil.isNullOrEmpty(file.getChecksum())) {
+                programReferences.put(file.getPathAndName(), file.getChecksum().toLowerCase());
+            }
+        }
+
+        saveReferences();
+    }
+
+    /**
+     * Records that the specified files no longer belong to a program
+     * @param slug slug of the program
+     * @param files files removed from the program
+     */
+    public static synchronized void removeReferences(String slug, List<FileInfo> files) {
+        Map<String, String> programReferences = getReferences().get(slug);
+
+        if (programReferences == null) {
+            return;
+        }
+
+        for (FileInfo file : files) {
+            programReferences.remove(file.getPathAndName());
+        }
+
+        saveReferences();
+    }
+
+    /**
+     * Removes every reference of a program and deletes the stored files that
+     * are no longer referenced
+     * @param slug slug of the program
+     */
+    public static synchronized void removeProgram(String slug) {
+        pendingReferences.remove(slug);
+
+        if (getReferences().remove(slug) != null) {
+            saveReferences();
+        }
+
+        collectGarbage();
+    }
+
+    /**
+     * Deletes every stored file that is not referenced by a program
+     */
+    public static synchronized void collectGarbage() {
+        File[] folders = new File(Configuration.BLOBS_FOLDER).listFiles(File::isDirectory);
+
+        if (folders == null) {
+            return;
+        }
+
+        Set<String> referencedChecksums = new HashSet<String>();
+
+        for (Map<String, String> programReferences : getReferences().values()) {
+            referencedChecksums.addAll(programReferences.values());
+        }
+
+        for (Set<String> checksums : pendingReferences.values()) {
+            referencedChecksums.addAll(checksums);
+        }
+
+        for (File folder : folders) {
+            File[] blobs = folder.listFiles();
+
+            if (blobs == null) {
+                continue;
+            }
+
+            for (File blob : blobs) {
+                if (!referencedChecksums.contains(blob.getName())) {
+                    blob.delete();
+                }
+            }
+
+            folder.delete();
+        }
+    }
+
+}
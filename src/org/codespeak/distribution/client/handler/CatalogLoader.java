@@ -0,0 +1,247 @@
+package org.codespeak.distribution.client.handler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import org.codespeak.distribution.client.Configuration;
+import org.codespeak.distribution.client.data.Catalog;
+import org.codespeak.distribution.client.data.Category;
+import org.codespeak.distribution.client.data.Dependency;
+import org.codespeak.distribution.client.data.Program;
+import org.codespeak.distribution.client.data.query.Decoder;
+import org.codespeak.distribution.client.data.query.QueryTypes;
+import org.codespeak.distribution.client.objects.ClientException;
+import org.codespeak.distribution.client.util.IntMap;
+import org.codespeak.distribution.client.util.JsonReader;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A class that loads the catalog of categories, dependencies and programs
+ * from the backend. All three queries are made at the same time, and the
+ * programs are linked to their categories and dependencies while they are
+ * decoded. The last fetched catalog is also saved so it can be shown
+ * right away on the next startup
+ *
+ * @author Vector
+ */
+public class CatalogLoader {
+
+    private static final Logger LOGGER = Logger.getLogger(CatalogLoader.class.getName());
+
+    /**
+     * Links programs to their categories and dependencies while the programs
+     * are still being decoded. The lookup tables are built once the
+     * categories and dependencies queries have completed
+     */
+    private static class CatalogLinker {
+
+        private final Future<List<Category>> categoriesFuture;
+        private final Future<List<Dependency>> dependenciesFuture;
+        private IntMap<Category> categoryMap = null;
+        private IntMap<Dependency> dependencyMap = null;
+        private long waitMillis = 0;
+
+        private CatalogLinker(Future<List<Category>> categoriesFuture, Future<List<Dependency>> dependenciesFuture) {
+            this.categoriesFuture = categoriesFuture;
+            this.dependenciesFuture = dependenciesFuture;
+        }
+
+        private synchronized void await() throws IOException {
+            if (categoryMap != null) {
+                return;
+            }
+
+            long waitStartTime = System.nanoTime();
+
+            try {
+                List<Category> categories = getResult(categoriesFuture);
+                List<Dependency> dependencies = getResult(dependenciesFuture);
+                IntMap<Category> categoryLookup = new IntMap<Category>(categories.size());
+                IntMap<Dependency> dependencyLookup = new IntMap<Dependency>(dependencies.size());
+
+                for (Category category : categories) {
+                    categoryLookup.put(category.getId(), category);
+                }
+
+                for (Dependency dependency : dependencies) {
+                    dependencyLookup.put(dependency.getId(), dependency);
+                }
+
+                dependencyMap = dependencyLookup;
+                categoryMap = categoryLookup;
+                waitMillis = elapsedMillis(waitStartTime);
+            } catch (ClientException ex) {
+                throw new IOException("Unable to load categories and dependencies.", ex);
+            }
+        }
+
+        private synchronized long getWaitMillis() {
+            return waitMillis;
+        }
+
+        private Category getCategory(int id) {
+            return categoryMap.get(id);
+        }
+
+        private Dependency getDependency(int id) {
+            return dependencyMap.get(id);
+        }
+
+    }
+
+    private static <T> T getResult(Future<T> future) throws ClientException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+
+            throw ClientException.fromException(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw ClientException.fromException((Exception) cause);
+        }
+    }
+
+    private static long elapsedMillis(long startTime) {
+        return (System.nanoTime() - startTime) / 1000000L;
+    }
+
+    /**
+     * Fetches the catalog from the backend. Programs are decoded as their
+     * response is read and are linked to their categories and dependencies as
+     * soon as those queries complete
+     * @return catalog fetched from the backend
+     * @throws org.codespeak.distribution.client.objects.ClientException if
+     * any of the catalog queries fail
+     */
+    public static Catalog fetch() throws ClientException {
+        ExecutorService executor = Executors.newFixedThreadPool(3, (Runnable runnable) -> {
+            Thread thread = new Thread(runnable, "Catalog Loader");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        long startTime = System.nanoTime();
+        AtomicLong lookupsMillis = new AtomicLong();
+        AtomicLong programsMillis = new AtomicLong();
+        CatalogLinker linker = null;
+        List<Category> categories = null;
+        List<Dependency> dependencies = null;
+        List<Program> programs = null;
+
+        try {
+            Future<List<Category>> categoriesFuture = executor.submit((Callable<List<Category>>) () -> {
+                List<Category> result = BackendHandler.getDataFromQuery(QueryTypes.GET_CATEGORIES);
+                lookupsMillis.accumulateAndGet(elapsedMillis(startTime), Math::max);
+
+                return result;
+            });
+            Future<List<Dependency>> dependenciesFuture = executor.submit((Callable<List<Dependency>>) () -> {
+                List<Dependency> result = BackendHandler.getDataFromQuery(QueryTypes.GET_DEPENDENCIES);
+                lookupsMillis.accumulateAndGet(elapsedMillis(startTime), Math::max);
+
+                return result;
+            });
+            CatalogLinker programLinker = new CatalogLinker(categoriesFuture, dependenciesFuture);
+            Future<List<Program>> programsFuture = executor.submit(() -> {
+                List<Program> result = BackendHandler.getDataFromQuery(QueryTypes.GET_PROGRAMS, "", Decoder.listOf(Decoder.withCopier((JsonReader reader) -> {
+                    programLinker.await();
+
+                    return Program.read(reader, programLinker::getCategory, programLinker::getDependency, false);
+                }, Program::copy)));
+                programsMillis.set(elapsedMillis(startTime));
+
+                return result;
+            });
+
+            linker = programLinker;
+            categories = getResult(categoriesFuture);
+            dependencies = getResult(dependenciesFuture);
+            programs = getResult(programsFuture);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // The programs query runs alongside the other two, so the time spent
+        // on it excludes the time its decoder waited for them to complete
+        long linkWaitMillis = linker.getWaitMillis();
+
+        LOGGER.info("Fetched catalog of " + categories.size() + " categories, " + dependencies.size()
+                    + " dependencies and " + programs.size() + " programs (categories and dependencies: "
+                    + lookupsMillis.get() + " ms, link wait: " + linkWaitMillis + " ms, programs: "
+                    + (programsMillis.get() - linkWaitMillis) + " ms, total: " + elapsedMillis(startTime) + " ms)");
+
+        return new Catalog(categories, dependencies, programs);
+    }
+
+    /**
+     * Loads the catalog that was saved during the last successful fetch
+     * @return the saved catalog, or null if no catalog could be loaded
+     */
+    public static Catalog loadCachedCatalog() {
+        File catalogFile = new File(Configuration.CATALOG_FILE);
+
+        if (!catalogFile.exists()) {
+            return null;
+        }
+
+        try {
+            byte[] bytes = Files.readAllBytes(catalogFile.toPath());
+            JSONObject json = new JSONObject(new String(bytes, StandardCharsets.UTF_8));
+
+            return Catalog.fromJSON(json);
+        } catch (IOException | JSONException ex) {
+            LOGGER.warning("Unable to load the saved catalog: " + ex.getMessage());
+
+            return null;
+        }
+    }
+
+    /**
+     * Saves the specified catalog so it can be shown on the next startup
+     * before the backend responds. The catalog is written to a temporary file
+     * first and then moved over the old one, so a catalog that was only partly
+     * written is never loaded
+     * @param catalog catalog to save
+     */
+    public static synchronized void saveCachedCatalog(Catalog catalog) {
+        Path catalogPath = Paths.get(Configuration.CATALOG_FILE);
+        Path tempPath = Paths.get(catalogPath + ".tmp");
+
+        try {
+            try (FileOutputStream out = new FileOutputStream(tempPath.toFile())) {
+                out.write(catalog.toJSON().toString().getBytes(StandardCharsets.UTF_8));
+            }
+
+            try {
+                Files.move(tempPath, catalogPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempPath, catalogPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            LOGGER.warning("Unable to save the catalog: " + ex.getMessage());
+        }
+    }
+
+}
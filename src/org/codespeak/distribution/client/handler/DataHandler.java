@@ -3,14 +3,18 @@ package org.codespeak.distribution.client.handler;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import org.codespeak.distribution.client.data.Catalog;
 import org.codespeak.distribution.client.data.Category;
 import org.codespeak.distribution.client.data.Dependency;
 import org.codespeak.distribution.client.data.Program;
 import org.codespeak.distribution.client.objects.ClientException;
+import org.codespeak.distribution.client.util.IntMap;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -29,8 +33,130 @@ public class DataHandler {
     private static List<Dependency> installedDependencies = new ArrayList<Dependency>();
     private static List<Program> installedPrograms = new ArrayList<Program>();
 
+    private static IntMap<Category> categoryIndex = new IntMap<Category>();
+    private static IntMap<Dependency> dependencyIndex = new IntMap<Dependency>();
+    private static IntMap<Program> programIndex = new IntMap<Program>();
+    private static IntMap<List<Program>> programsByCategory = new IntMap<List<Program>>();
+    
+    private static IntMap<Category> installedCategoryIndex = new IntMap<Category>();
+    private static IntMap<Dependency> installedDependencyIndex = new IntMap<Dependency>();
+    private static IntMap<Program> installedProgramIndex = new IntMap<Program>();
+    private static IntMap<List<Program>> installedProgramsByCategory = new IntMap<List<Program>>();
+    
+    // Merged views of installed and available items. These are built the
+    // first time they are requested and kept until the data changes
+    private static List<Category> categoriesView = null;
+    private static List<Program> allProgramsView = null;
+    private static IntMap<List<Program>> categoryProgramsViews = new IntMap<List<Program>>();
+
     private static Map<String, String> mappedData = new HashMap<String, String>();
-    private static List<Integer> storedProgramIDs = new ArrayList<Integer>();
+    private static Set<Integer> storedProgramIDs = new HashSet<Integer>();
+    
+    private static int getCategoryId(Program program) {
+        Category category = program.getCategory();
+        
+        return (category != null ? category.getId() : 0);
+    }
+    
+    private static void indexProgram(IntMap<List<Program>> byCategory, Program program) {
+        int categoryId = getCategoryId(program);
+        List<Program> categoryPrograms = byCategory.get(categoryId);
+        
+        if (categoryPrograms == null) {
+            categoryPrograms = new ArrayList<Program>();
+            byCategory.put(categoryId, categoryPrograms);
+        }
+        
+        categoryPrograms.add(program);
+    }
+    
+    private static void unindexProgram(IntMap<List<Program>> byCategory, Program program) {
+        int categoryId = getCategoryId(program);
+        List<Program> categoryPrograms = byCategory.get(categoryId);
+        
+        if (categoryPrograms != null) {
+            categoryPrograms.remove(program);
+            
+            if (categoryPrograms.isEmpty()) {
+                byCategory.remove(categoryId);
+            }
+        }
+    }
+    
+    private static void invalidateViews() {
+        categoriesView = null;
+        allProgramsView = null;
+        categoryProgramsViews.clear();
+    }
+    
+    private static void addInstalledCategory(Category category) {
+        if (category != null && !installedCategoryIndex.containsKey(category.getId())) {
+            installedCategories.add(category);
+            installedCategoryIndex.put(category.getId(), category);
+        }
+    }
+    
+    private static void addInstalledDependency(Dependency dependency) {
+        if (!installedDependencyIndex.containsKey(dependency.getId())) {
+            installedDependencies.add(dependency);
+            installedDependencyIndex.put(dependency.getId(), dependency);
+        }
+    }
+    
+    private static void registerInstalledProgram(Program program) {
+        addInstalledCategory(program.getCategory());
+        
+        for (Dependency dependency : program.getDependencies().keySet()) {
+            addInstalledDependency(dependency);
+        }
+        
+        installedPrograms.add(program);
+        installedProgramIndex.put(program.getId(), program);
+        indexProgram(installedProgramsByCategory, program);
+        invalidateViews();
+    }
+    
+    private static void unregisterInstalledProgram(Program program) {
+        int categoryId = getCategoryId(program);
+        
+        installedPrograms.remove(program);
+        unindexProgram(installedProgramsByCategory, program);
+        installedProgramIndex.remove(program.getId());
+        
+        Set<Dependency> deps = new HashSet<Dependency>(program.getDependencies().keySet());
+        
+        for (Program checkProgram : installedPrograms) {
+            deps.removeAll(checkProgram.getDependencies().keySet());
+        }
+        
+        if (!installedProgramsByCategory.containsKey(categoryId)) {
+            Category category = installedCategoryIndex.remove(categoryId);
+            
+            if (category != null) {
+                installedCategories.remove(category);
+            }
+        }
+        
+        for (Dependency dependency : deps) {
+            installedDependencies.remove(dependency);
+            installedDependencyIndex.remove(dependency.getId());
+        }
+        
+        invalidateViews();
+    }
+    
+    private static List<Program> buildProgramsView(List<Program> installed, List<Program> available) {
+        List<Program> ret = new ArrayList<Program>(installed);
+        
+        for (Program program : available) {
+            if (!installedProgramIndex.containsKey(program.getId())) {
+                ret.add(program);
+            }
+        }
+        
+        return Collections.unmodifiableList(ret);
+    }
+    
     /**
      * Adds a category to the list
      * @param category category to add
@@ -39,9 +165,13 @@ public class DataHandler {
     public static void addCategory(Category category, boolean installed) {
         if (installed) {
             installedCategories.add(category);
+            installedCategoryIndex.put(category.getId(), category);
         } else {
             categories.add(category);
+            categoryIndex.put(category.getId(), category);
         }
+        
+        invalidateViews();
     }
     
     /**
@@ -51,15 +181,7 @@ public class DataHandler {
      * @return Category object represented by the ID
      */
     public static Category getCategory(int id, boolean installed) {
-        List<Category> cats = (installed ? installedCategories : categories);
-        
-        for (Category category : cats) {
-            if (category.getId() == id) {
-                return category;
-            }
-        }
-        
-        return null;
+        return (installed ? installedCategoryIndex : categoryIndex).get(id);
     }
     
     /**
@@ -68,19 +190,19 @@ public class DataHandler {
      * @return unmodifiable list of all categories
      */
     public static List<Category> getCategories() {
-        List<Category> ret = new ArrayList<Category>();
-        
-        for (Category category : installedCategories) {
-            ret.add(category);
-        }
-        
-        for (Category category : categories) {
-            if (!ret.contains(category)) {
-                ret.add(category);
+        if (categoriesView == null) {
+            List<Category> ret = new ArrayList<Category>(installedCategories);
+
+            for (Category category : categories) {
+                if (!installedCategoryIndex.containsKey(category.getId())) {
+                    ret.add(category);
+                }
             }
+            
+            categoriesView = Collections.unmodifiableList(ret);
         }
         
-        return ret;
+        return categoriesView;
     }
 
     /**
@@ -91,8 +213,10 @@ public class DataHandler {
     public static void addDependency(Dependency dependency, boolean installed) {
         if (installed) {
             installedDependencies.add(dependency);
+            installedDependencyIndex.put(dependency.getId(), dependency);
         } else {
-            dependencies.add(dependency);            
+            dependencies.add(dependency);
+            dependencyIndex.put(dependency.getId(), dependency);
         }
     }
 
@@ -103,15 +227,7 @@ public class DataHandler {
      * @return dependency object representing the ID
      */
     public static Dependency getDependency(int id, boolean installed) {
-        List<Dependency> deps = (installed ? installedDependencies : dependencies);
-        
-        for (Dependency dependency : deps) {
-            if (dependency.getId() == id) {
-                return dependency;
-            }
-        }
-        
-        return null;
+        return (installed ? installedDependencyIndex : dependencyIndex).get(id);
     }
 
     /**
@@ -122,9 +238,15 @@ public class DataHandler {
     public static void addProgram(Program program, boolean installed) {
         if (installed) {
             installedPrograms.add(program);
+            installedProgramIndex.put(program.getId(), program);
+            indexProgram(installedProgramsByCategory, program);
         } else {
-            programs.add(program);            
+            programs.add(program);
+            programIndex.put(program.getId(), program);
+            indexProgram(programsByCategory, program);
         }
+        
+        invalidateViews();
     }
     
     /**
@@ -134,15 +256,7 @@ public class DataHandler {
      * @return a program object represented by its ID
      */
     public static Program getProgram(int id, boolean installed) {
-        List<Program> progs = (installed ? installedPrograms : programs);
-        
-        for (Program program : progs) {
-            if (program.getId() == id) {
-                return program;
-            }
-        }
-        
-        return null;
+        return (installed ? installedProgramIndex : programIndex).get(id);
     }
     
     /**
@@ -155,21 +269,50 @@ public class DataHandler {
     public static void installProgram(Program program) throws IOException, ClientException {
         program.install();
         
-        Category category = program.getCategory();
-        
-        if (!installedCategories.contains(category)) {
-            installedCategories.add(category);
-        }
-        
-        for (EnumMap.Entry<Dependency, Long> entry : program.getDependencies().entrySet()) {
-            Dependency dependency = entry.getKey();
-            
-            if (!installedDependencies.contains(dependency)) {
-                installedDependencies.add(dependency);
-            }
-        }
+        finishInstallProgram(program);
+    }
+    
+    /**
+     * Registers a program whose files have just been installed. This allows
+     * the files to be installed on another thread than the one that owns the
+     * data of the client
+     * @param program the program that was installed
+     */
+    public static void finishInstallProgram(Program program) {
+        program.setInstalled(true);
+        registerInstalledProgram(program);
+        DataJournal.recordInstall(program);
+    }
+    
+    /**
+     * Updates an installed program using the latest information on it
+     * @param installedProgram the installed program to update
+     * @param program the latest information on the program
+     * @throws java.io.IOException error if unable to update program
+     * @throws org.codespeak.distribution.client.objects.ClientException if
+     * there is an error doing a query
+     */
+    public static void updateProgram(Program installedProgram, Program program) throws IOException, ClientException {
+        installedProgram.update(program);
         
-        installedPrograms.add(program);
+        finishUpdateProgram(installedProgram, program);
+    }
+    
+    /**
+     * Applies the latest information on an installed program whose files have
+     * just been updated, and reindexes it. This allows the files to be updated
+     * on another thread than the one that owns the data of the client
+     * @param installedProgram the installed program that was updated
+     * @param program the latest information on the program
+     */
+    public static void finishUpdateProgram(Program installedProgram, Program program) {
+        // The category and dependencies may change with the update, so the
+        // program is unregistered under the old ones, which also removes
+        // them if no other installed program uses them
+        unregisterInstalledProgram(installedProgram);
+        installedProgram.applyUpdate(program);
+        registerInstalledProgram(installedProgram);
+        DataJournal.recordUpdate(installedProgram);
     }
 
     /**
@@ -179,33 +322,48 @@ public class DataHandler {
      */
     public static void uninstallProgram(Program program) throws IOException {
         program.uninstall();
-
-        installedPrograms.remove(program);
         
-        Category category = program.getCategory();
-        Map<Dependency, Long> deps = program.getDependencies();
+        finishUninstallProgram(program);
+    }
+    
+    /**
+     * Unregisters a program whose files have just been removed. This allows
+     * the files to be removed on another thread than the one that owns the
+     * data of the client
+     * @param program the program that was uninstalled
+     */
+    public static void finishUninstallProgram(Program program) {
+        program.setInstalled(false);
+        unregisterInstalledProgram(program);
+        DataJournal.recordUninstall(program);
+    }
+    
+    /**
+     * Registers an installed program without installing it, replacing any
+     * installed program with the same ID. This is used to restore changes
+     * from the data journal
+     * @param program the installed program to register
+     */
+    public static void restoreInstalledProgram(Program program) {
+        Program existingProgram = installedProgramIndex.get(program.getId());
         
-        for (Program checkProgram : installedPrograms) {
-            Category checkCategory = checkProgram.getCategory();
-            Map<Dependency, Long> checkDependencies = checkProgram.getDependencies();
-            
-            if (checkCategory.equals(category)) {
-                category = null;
-            }
-            
-            for (Dependency checkDependency : checkDependencies.keySet()) {
-                if (deps.containsKey(checkDependency)) {
-                    deps.remove(checkDependency);
-                }
-            }
+        if (existingProgram != null) {
+            unregisterInstalledProgram(existingProgram);
         }
         
-        if (category != null) {
-            installedCategories.remove(category);
-        }
+        registerInstalledProgram(program);
+    }
+    
+    /**
+     * Unregisters an installed program without uninstalling it. This is used
+     * to restore changes from the data journal
+     * @param id ID of the installed program to unregister
+     */
+    public static void restoreUninstalledProgram(int id) {
+        Program program = installedProgramIndex.get(id);
         
-        for (Dependency dependency : deps.keySet()) {
-            installedDependencies.remove(dependency);
+        if (program != null) {
+            unregisterInstalledProgram(program);
         }
     }
     
@@ -218,31 +376,57 @@ public class DataHandler {
      * @return unmodifiable list of all programs
      */
     public static List<Program> getPrograms(Category category) {
-        List<Program> ret = new ArrayList<Program>();
-        
-        for (Program program : installedPrograms) {
-            Category currentCategory = program.getCategory();
-
-            if (category != null && !category.equals(currentCategory)) {
-                continue;
+        if (category == null) {
+            if (allProgramsView == null) {
+                allProgramsView = buildProgramsView(installedPrograms, programs);
             }
             
-            ret.add(program);
+            return allProgramsView;
         }
-
-        for (Program program : programs) {
-            Category currentCategory = program.getCategory();
-
-            if (category != null && !category.equals(currentCategory)) {
-                continue;
-            }
-
-            if (!ret.contains(program)) {
-                ret.add(program);
-            }
+        
+        int categoryId = category.getId();
+        List<Program> view = categoryProgramsViews.get(categoryId);
+        
+        if (view == null) {
+            List<Program> installedInCategory = installedProgramsByCategory.get(categoryId);
+            List<Program> availableInCategory = programsByCategory.get(categoryId);
+            
+            view = buildProgramsView(installedInCategory != null ? installedInCategory : Collections.<Program>emptyList(),
+                                     availableInCategory != null ? availableInCategory : Collections.<Program>emptyList());
+            categoryProgramsViews.put(categoryId, view);
         }
-
-        return Collections.unmodifiableList(ret);
+        
+        return view;
+    }
+    
+    /**
+     * Replaces the categories, dependencies and programs available from the
+     * distribution system with those of the specified catalog. Installed
+     * programs are not affected
+     * @param catalog catalog to use
+     */
+    public static void setCatalog(Catalog catalog) {
+        categories.clear();
+        categoryIndex.clear();
+        dependencies.clear();
+        dependencyIndex.clear();
+        programs.clear();
+        programIndex.clear();
+        programsByCategory.clear();
+        
+        for (Category category : catalog.getCategories()) {
+            addCategory(category, false);
+        }
+        
+        for (Dependency dependency : catalog.getDependencies()) {
+            addDependency(dependency, false);
+        }
+        
+        for (Program program : catalog.getPrograms()) {
+            addProgram(program, false);
+        }
+        
+        invalidateViews();
     }
     
     /**
@@ -252,6 +436,7 @@ public class DataHandler {
      */
     public static void setMappedData(String key, String value) {
         mappedData.put(key, value);
+        DataJournal.recordMappedData(key, value);
     }
     
     /**
@@ -272,6 +457,38 @@ public class DataHandler {
         return mappedData.containsKey(key);
     }
     
+    /**
+     * Gets an unmodifiable map of all mapped data
+     * @return unmodifiable map of all mapped data
+     */
+    public static Map<String, String> getAllMappedData() {
+        return Collections.unmodifiableMap(mappedData);
+    }
+    
+    /**
+     * Gets an unmodifiable list of the installed programs
+     * @return unmodifiable list of the installed programs
+     */
+    public static List<Program> getInstalledPrograms() {
+        return Collections.unmodifiableList(installedPrograms);
+    }
+    
+    /**
+     * Gets the IDs of the programs of the catalog. These are saved with the
+     * data, so programs added to the catalog since can be found on the next
+     * start
+     * @return IDs of the programs of the catalog
+     */
+    public static List<Integer> getCatalogProgramIDs() {
+        List<Integer> ids = new ArrayList<Integer>(programs.size());
+        
+        for (Program program : programs) {
+            ids.add(program.getId());
+        }
+        
+        return ids;
+    }
+    
     /**
      * Gets an array list of new programs
      * @return array list of new programs
@@ -295,21 +512,35 @@ public class DataHandler {
     }
     
     /**
-     * Goes through all installed programs and marks if any are detached from
+     * Gets the installed programs that have a newer release available from
      * the distribution system
+     * @return list of installed programs that can be updated
      */
-    public static void markDetachedPrograms() {
-        for (Program program : installedPrograms) {
-            boolean detached = true;
+    public static List<Program> getOutdatedPrograms() {
+        List<Program> ret = new ArrayList<Program>();
+        
+        for (Program installedProgram : installedPrograms) {
+            Program program = programIndex.get(installedProgram.getId());
             
-            for (Program program2 : programs) {
-                if (program2.equals(program)) {
-                    detached = false;
-                    break;
-                }
+            if (program == null || program.getReleaseTime() == null || installedProgram.getReleaseTime() == null) {
+                continue;
             }
             
-            program.setDetached(detached);
+            if (program.getReleaseTime().isAfter(installedProgram.getReleaseTime())) {
+                ret.add(installedProgram);
+            }
+        }
+        
+        return ret;
+    }
+    
+    /**
+     * Goes through all installed programs and marks if any are detached from
+     * the distribution system
+     */
+    public static void markDetachedPrograms() {
+        for (Program program : installedPrograms) {
+            program.setDetached(!programIndex.containsKey(program.getId()));
         }
     }
     
@@ -319,8 +550,8 @@ public class DataHandler {
      * @return JSON representation of various data
      */
     public static JSONObject exportDataToJSON() {
-        List<Category> savedCategories = new ArrayList<Category>();
-        List<Dependency> savedDependencies = new ArrayList<Dependency>();
+        Set<Category> savedCategories = new LinkedHashSet<Category>();
+        Set<Dependency> savedDependencies = new LinkedHashSet<Dependency>();
         
         JSONObject json = new JSONObject();
         JSONArray jsonCategories = new JSONArray();
@@ -332,17 +563,8 @@ public class DataHandler {
         for (Program program : installedPrograms) {
             jsonInstalledPrograms.put(program.toJSON());
             
-            Category category = program.getCategory();
-            
-            if (!savedCategories.contains(category)) {
-                savedCategories.add(category);
-            }
-            
-            for (Dependency dependency : program.getDependencies().keySet()) {
-                if (!savedDependencies.contains(dependency)) {
-                    savedDependencies.add(dependency);
-                }
-            }
+            savedCategories.add(program.getCategory());
+            savedDependencies.addAll(program.getDependencies().keySet());
         }
         
         for (Category category : savedCategories) {
@@ -372,6 +594,35 @@ public class DataHandler {
         return json;
     }
     
+    /**
+     * Imports installed programs, their categories and dependencies, the IDs
+     * of the programs stored with them and mapped data
+     * @param importedCategories categories of the installed programs
+     * @param importedDependencies dependencies of the installed programs
+     * @param importedPrograms installed programs
+     * @param importedStoredProgramIDs IDs of the programs of the catalog
+     * when the data was saved
+     * @param importedMappedData mapped data
+     */
+    public static void importData(List<Category> importedCategories, List<Dependency> importedDependencies,
+                                  List<Program> importedPrograms, List<Integer> importedStoredProgramIDs,
+                                  Map<String, String> importedMappedData) {
+        for (Category category : importedCategories) {
+            addCategory(category, true);
+        }
+        
+        for (Dependency dependency : importedDependencies) {
+            addDependency(dependency, true);
+        }
+        
+        for (Program program : importedPrograms) {
+            addProgram(program, true);
+        }
+        
+        storedProgramIDs.addAll(importedStoredProgramIDs);
+        mappedData.putAll(importedMappedData);
+    }
+    
     /**
      * Imports data from JSON. This includes all installed programs, their
      * categories and dependencies
@@ -384,7 +635,7 @@ public class DataHandler {
             for (int i = 0; i < jsonCategories.length(); i++) {
                 JSONObject obj = jsonCategories.getJSONObject(i);
                 Category category = Category.fromJSON(obj);
-                installedCategories.add(category);
+                addCategory(category, true);
             }
         }
         
@@ -394,7 +645,7 @@ public class DataHandler {
             for (int i = 0; i < jsonDependencies.length(); i++) {
                 JSONObject obj = jsonDependencies.getJSONObject(i);
                 Dependency dependency = Dependency.fromJSON(obj);
-                installedDependencies.add(dependency);
+                addDependency(dependency, true);
             }
         }
         
@@ -404,7 +655,7 @@ public class DataHandler {
             for (int i = 0; i < jsonPrograms.length(); i++) {
                 JSONObject obj = jsonPrograms.getJSONObject(i);
                 Program program = Program.fromJSON(obj, true);
-                installedPrograms.add(program);
+                addProgram(program, true);
             }
         }
         
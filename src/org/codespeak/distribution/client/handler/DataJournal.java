@@ -0,0 +1,309 @@
+package org.codespeak.distribution.client.handler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.logging.Logger;
+import org.codespeak.distribution.client.Configuration;
+import org.codespeak.distribution.client.Settings.SettingFields;
+import org.codespeak.distribution.client.data.Category;
+import org.codespeak.distribution.client.data.Dependency;
+import org.codespeak.distribution.client.data.Program;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A class that records changes to the installed programs and mapped data as
+ * they happen. Each change is appended to the journal as a line of JSON, and
+ * the journal is replayed on top of the data file on startup so that no change
+ * is lost if the client does not exit cleanly. Once the journal grows long
+ * enough, it is compacted into a new data file
+ *
+ * @author Vector
+ */
+public class DataJournal {
+
+    private static final Logger LOGGER = Logger.getLogger(DataJournal.class.getName());
+
+    private static final int COMPACT_THRESHOLD = 50;
+
+    private static final String INSTALL_ENTRY = "install";
+    private static final String UPDATE_ENTRY = "update";
+    private static final String UNINSTALL_ENTRY = "uninstall";
+    private static final String MAPPED_DATA_ENTRY = "mapped_data";
+
+    private static FileOutputStream journal = null;
+    private static int entryCount = 0;
+
+    private static JSONObject createProgramEntry(String type, Program program) {
+        JSONObject entry = new JSONObject();
+        JSONArray jsonDependencies = new JSONArray();
+        Category category = program.getCategory();
+
+        if (category != null) {
+            entry.put("category", category.toJSON());
+        }
+
+        for (Dependency dependency : program.getDependencies().keySet()) {
+            jsonDependencies.put(dependency.toJSON());
+        }
+
+        entry.put("type", type);
+        entry.put("dependencies", jsonDependencies);
+        entry.put("program", program.toJSON());
+
+        return entry;
+    }
+
+    private static synchronized void append(JSONObject entry, boolean durable) {
+        if (journal == null) {
+            return;
+        }
+
+        try {
+            journal.write((entry.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+
+            if (durable) {
+                journal.getFD().sync();
+            }
+
+            entryCount++;
+        } catch (IOException ex) {
+            LOGGER.warning("Unable to write to the data journal: " + ex.getMessage());
+        }
+
+        if (entryCount >= COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    private static void applyEntry(JSONObject entry) {
+        String type = entry.getString("type");
+
+        switch (type) {
+            case INSTALL_ENTRY:
+            case UPDATE_ENTRY:
+                if (entry.has("category")) {
+                    Category category = Category.fromJSON(entry.getJSONObject("category"));
+
+                    if (DataHandler.getCategory(category.getId(), true) == null) {
+                        DataHandler.addCategory(category, true);
+                    }
+                }
+
+                JSONArray jsonDependencies = entry.getJSONArray("dependencies");
+
+                for (int i = 0; i < jsonDependencies.length(); i++) {
+                    Dependency dependency = Dependency.fromJSON(jsonDependencies.getJSONObject(i));
+
+                    if (DataHandler.getDependency(dependency.getId(), true) == null) {
+                        DataHandler.addDependency(dependency, true);
+                    }
+                }
+
+                DataHandler.restoreInstalledProgram(Program.fromJSON(entry.getJSONObject("program"), true));
+
+                break;
+            case UNINSTALL_ENTRY:
+                DataHandler.restoreUninstalledProgram(entry.getInt("id"));
+
+                break;
+            case MAPPED_DATA_ENTRY:
+                DataHandler.setMappedData(entry.getString("key"), entry.getString("value"));
+
+                break;
+        }
+    }
+
+    /**
+     * Replays the journal on top of the data that has been imported from the
+     * data file. This must be called before the journal is opened
+     */
+    public static void replay() {
+        File journalFile = new File(Configuration.DATA_JOURNAL_FILE);
+
+        if (!journalFile.exists()) {
+            return;
+        }
+
+        try {
+            List<String> lines = Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8);
+
+            for (String line : lines) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                applyEntry(new JSONObject(line));
+                entryCount++;
+            }
+        } catch (IOException | JSONException ex) {
+            // A crash while appending can leave the last entry incomplete.
+            // Every entry before it has already been applied
+            LOGGER.warning("Stopped replaying the data journal: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Loads the data of the client. The data file is imported, the journal is
+     * replayed on top of it and folded into a new data file, and the journal
+     * is opened so that changes can be recorded
+     * @throws IOException thrown if the data file or the journal could not be
+     * opened
+     */
+    public static void load() throws IOException {
+        importDataFile();
+
+        // Changes made after the data file was last written are replayed from
+        // the journal, then folded into a new data file
+        replay();
+        compact();
+        open();
+    }
+
+    /**
+     * Opens the journal so that changes can be recorded
+     * @throws IOException thrown if the journal could not be opened
+     */
+    public static synchronized void open() throws IOException {
+        if (journal == null) {
+            journal = new FileOutputStream(Configuration.DATA_JOURNAL_FILE, true);
+        }
+    }
+
+    /**
+     * Closes the journal
+     */
+    public static synchronized void close() {
+        if (journal == null) {
+            return;
+        }
+
+        try {
+            journal.close();
+        } catch (IOException ex) {
+
+        }
+
+        journal = null;
+    }
+
+    /**
+     * Reads the data file and imports its data. The format chosen in the settings is preferred, but
+     * a data file in the other format is read if it is the only one, so that
+     * changing the setting converts the data on the next compaction
+     * @throws IOException thrown if the data file could not be read
+     */
+    public static void importDataFile() throws IOException {
+        boolean binary = Configuration.getSettings().getValue(SettingFields.BINARY_DATA_SNAPSHOT);
+        File jsonFile = new File(Configuration.DATA_FILE);
+        File binaryFile = new File(Configuration.DATA_SNAPSHOT_FILE);
+
+        if (binaryFile.exists() && (binary || !jsonFile.exists())) {
+            SnapshotCodec.load(binaryFile);
+        } else if (jsonFile.exists()) {
+            byte[] bytes = Files.readAllBytes(jsonFile.toPath());
+
+            DataHandler.importDataFromJSON(new JSONObject(new String(bytes, StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * Writes all data to a new data file and empties the journal. The data
+     * file is written to a temporary file first and then moved over the old
+     * data file, so there is always a complete data file on disk
+     */
+    public static synchronized void compact() {
+        boolean binary = Configuration.getSettings().getValue(SettingFields.BINARY_DATA_SNAPSHOT);
+        File dataFile = new File(binary ? Configuration.DATA_SNAPSHOT_FILE : Configuration.DATA_FILE);
+        File otherDataFile = new File(binary ? Configuration.DATA_FILE : Configuration.DATA_SNAPSHOT_FILE);
+        Path tempPath = Paths.get(dataFile.getPath() + ".tmp");
+
+        try {
+            byte[] bytes = (binary ? SnapshotCodec.encode()
+                                   : DataHandler.exportDataToJSON().toString().getBytes(StandardCharsets.UTF_8));
+
+            try (FileOutputStream out = new FileOutputStream(tempPath.toFile())) {
+                out.write(bytes);
+                out.getFD().sync();
+            }
+
+            try {
+                Files.move(tempPath, dataFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempPath, dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            otherDataFile.delete();
+
+            // The journal is only emptied once the new data file is in place.
+            // Replaying an entry that is already in the data file is harmless
+            boolean wasOpen = (journal != null);
+
+            close();
+            new FileOutputStream(Configuration.DATA_JOURNAL_FILE).close();
+
+            if (wasOpen) {
+                open();
+            }
+
+            entryCount = 0;
+        } catch (IOException ex) {
+            LOGGER.warning("Unable to compact the data journal: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Records that a program has been installed
+     * @param program the program that was installed
+     */
+    public static void recordInstall(Program program) {
+        append(createProgramEntry(INSTALL_ENTRY, program), true);
+    }
+
+    /**
+     * Records that an installed program has been updated
+     * @param program the program that was updated
+     */
+    public static void recordUpdate(Program program) {
+        append(createProgramEntry(UPDATE_ENTRY, program), true);
+    }
+
+    /**
+     * Records that a program has been uninstalled
+     * @param program the program that was uninstalled
+     */
+    public static void recordUninstall(Program program) {
+        JSONObject entry = new JSONObject();
+
+        entry.put("type", UNINSTALL_ENTRY);
+        entry.put("id", program.getId());
+
+        append(entry, true);
+    }
+
+    /**
+     * Records that mapped data has been set. Mapped data only holds user
+     * interface state, so it is not forced to disk
+     * @param key the key of the mapped data
+     * @param value the value of the mapped data
+     */
+    public static void recordMappedData(String key, String value) {
+        JSONObject entry = new JSONObject();
+
+        entry.put("type", MAPPED_DATA_ENTRY);
+        entry.put("key", key);
+        entry.put("value", value);
+
+        append(entry, false);
+    }
+
+}
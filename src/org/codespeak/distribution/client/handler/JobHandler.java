@@ -0,0 +1,147 @@
+package org.codespeak.distribution.client.handler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.control.Alert;
+import org.codespeak.distribution.client.Configuration;
+import org.codespeak.distribution.client.Main;
+import org.codespeak.distribution.client.Settings.SettingFields;
+import org.codespeak.distribution.client.data.query.ErrorType;
+import org.codespeak.distribution.client.objects.ClientException;
+import org.codespeak.distribution.client.objects.Job;
+
+/**
+ * A class that runs jobs on programs in the background. Jobs start in the
+ * order they were submitted, and only as many jobs as the settings allow run
+ * at the same time. Every method of this class must be called on the JavaFX
+ * application thread
+ *
+ * @author Vector
+ */
+public class JobHandler {
+
+    private static final ObservableList<Job> jobs = FXCollections.observableArrayList();
+    private static final ExecutorService executor = Executors.newCachedThreadPool((Runnable runnable) -> {
+        Thread thread = new Thread(runnable, "Job Worker");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+    private static Semaphore jobPermits = null;
+
+    private static Semaphore getJobPermits() {
+        if (jobPermits == null) {
+            int concurrentJobs = Configuration.getSettings().getValue(SettingFields.CONCURRENT_JOBS);
+
+            // A fair semaphore lets jobs start in the order they were
+            // submitted
+            jobPermits = new Semaphore(Math.max(1, concurrentJobs), true);
+        }
+
+        return jobPermits;
+    }
+
+    private static void runJob(Job job, Semaphore permits) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException ex) {
+            job.cancel();
+
+            return;
+        }
+
+        try {
+            job.run();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static void showError(Exception e) {
+        ClientException ex = ClientException.fromException(e);
+
+        Alert alert = ex.buildAlert();
+        alert.show();
+
+        Main.logError(ex);
+    }
+
+    private static void onJobSucceeded(Job job) {
+        try {
+            job.getCompletion().run();
+        } catch (Exception ex) {
+            showError(ex);
+        }
+    }
+
+    private static void onJobFailed(Job job) {
+        Throwable throwable = job.getException();
+
+        showError((throwable instanceof Exception) ? (Exception) throwable : new Exception(throwable));
+    }
+
+    /**
+     * Gets an unmodifiable list of the jobs that have been submitted
+     * @return unmodifiable list of the jobs that have been submitted
+     */
+    public static ObservableList<Job> getJobs() {
+        return FXCollections.unmodifiableObservableList(jobs);
+    }
+
+    /**
+     * Checks if the specified program has a job that has not finished
+     * @param programId ID of the program
+     * @return if the program has a job that has not finished
+     */
+    public static boolean hasActiveJob(int programId) {
+        for (Job job : jobs) {
+            if (job.getProgramId() == programId && !job.isDone()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Submits a job to run once a job slot is free. Jobs submitted earlier
+     * get a slot first
+     * @param job the job to submit
+     * @throws org.codespeak.distribution.client.objects.ClientException if
+     * the program of the job already has a job that has not finished
+     */
+    public static void submit(Job job) throws ClientException {
+        if (hasActiveJob(job.getProgramId())) {
+            throw new ClientException(ErrorType.ERROR_WARNING, "Unable to start: " + job.getTitle() + ".",
+                                      new Exception("This program already has a job in progress."));
+        }
+
+        job.setOnSucceeded(event -> onJobSucceeded(job));
+        job.setOnFailed(event -> onJobFailed(job));
+
+        Semaphore permits = getJobPermits();
+
+        jobs.add(job);
+        executor.submit(() -> runJob(job, permits));
+    }
+
+    /**
+     * Removes every finished job from the list of jobs
+     */
+    public static void clearFinishedJobs() {
+        jobs.removeIf(Job::isDone);
+    }
+
+    /**
+     * Cancels every job that has not finished
+     */
+    public static void cancelAllJobs() {
+        for (Job job : jobs) {
+            job.cancel();
+        }
+    }
+
+}
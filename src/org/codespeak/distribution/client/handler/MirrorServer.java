@@ -0,0 +1,636 @@
+package org.codespeak.distribution.client.handler;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.codespeak.distribution.client.Configuration;
+import org.codespeak.distribution.client.Settings.SettingFields;
+import org.codespeak.distribution.client.handler.transport.ContentEncoding;
+import org.codespeak.distribution.client.handler.transport.MirrorTransport;
+import org.codespeak.distribution.client.handler.transport.Transport;
+import org.codespeak.distribution.client.handler.transport.TransportResponse;
+import org.codespeak.distribution.client.util.MiscUtil;
+
+/**
+ * A class that runs a mirror of the backend for other clients on the local
+ * network. Program files are fetched from the backend once, checked against
+ * the checksum the requesting client names and kept by that checksum, so
+ * every later request for the file is served locally. Files this client has
+ * installed are served from the blob store. Query responses are kept for a
+ * short time. Both kinds of kept responses are limited in size, with the
+ * least recently used ones removed first, and only clients on the local
+ * network are served
+ *
+ * @author Vector
+ */
+public class MirrorServer {
+
+    private static final Logger LOGGER = Logger.getLogger(MirrorServer.class.getName());
+
+    private static final String MIRROR_FOLDER = "mirror";
+    private static final long QUERY_CACHE_MILLIS = 60000;
+    private static final long QUERY_CACHE_SIZE = 4 * 1024 * 1024;
+    private static final long MIRROR_CLEANUP_MILLIS = 60000;
+    private static final long STALE_TEMP_FILE_MILLIS = 60 * 60 * 1000;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Pattern CHECKSUM_PATTERN = Pattern.compile("[0-9a-fA-F]{16,128}");
+
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_BAD_REQUEST = 400;
+    private static final int HTTP_FORBIDDEN = 403;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_BAD_METHOD = 405;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private static final int HTTP_BAD_GATEWAY = 502;
+
+    /**
+     * A query response kept by the mirror
+     */
+    private static class CachedQuery {
+
+        private final byte[] body;
+        private final String eTag;
+        private final String lastModified;
+        private final String contentType;
+        private final long time = System.currentTimeMillis();
+
+        private CachedQuery(byte[] body, String eTag, String lastModified, String contentType) {
+            this.body = body;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+        }
+
+        private boolean isExpired() {
+            return (System.currentTimeMillis() - time > QUERY_CACHE_MILLIS);
+        }
+
+    }
+
+    private static final Map<String, CachedQuery> queryCache = new LinkedHashMap<String, CachedQuery>(16, 0.75f, true);
+    private static long queryCacheSize = 0;
+    private static final Object mirrorCleanupLock = new Object();
+    private static long lastMirrorCleanupTime = 0;
+    private static final Map<String, Object> fetchLocks = new ConcurrentHashMap<String, Object>();
+    private static HttpServer server = null;
+    private static ExecutorService executor = null;
+    private static Transport originTransport = null;
+
+    private static Map<String, String> createOriginHeaders(String acceptEncoding) {
+        Map<String, String> headers = new HashMap<String, String>();
+
+        headers.put("User-Agent", "CodeSpeakDistributionMirror/" + Configuration.PROGRAM_VERSION);
+        headers.put("Accept-Encoding", acceptEncoding);
+
+        return headers;
+    }
+
+    private static TransportResponse getFromOrigin(String url, Map<String, String> headers) throws IOException {
+        return ContentEncoding.decode(originTransport.get(url, headers), BackendHandler.getMetrics());
+    }
+
+    private static void sendEmpty(HttpExchange exchange, int statusCode) throws IOException {
+        exchange.sendResponseHeaders(statusCode, -1);
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+    }
+
+    private static boolean isLocalNetworkAddress(InetAddress address) {
+        if (address.isLoopbackAddress() || address.isSiteLocalAddress() || address.isLinkLocalAddress()) {
+            return true;
+        }
+
+        // Unique local IPv6 addresses (fc00::/7) are the private addresses
+        // of IPv6 networks
+        return (address instanceof Inet6Address && (address.getAddress()[0] & 0xfe) == 0xfc);
+    }
+
+    private static boolean checkClient(HttpExchange exchange) throws IOException {
+        if (isLocalNetworkAddress(exchange.getRemoteAddress().getAddress())) {
+            return true;
+        }
+
+        sendEmpty(exchange, HTTP_FORBIDDEN);
+
+        return false;
+    }
+
+    private static CachedQuery getCachedQuery(String originURL) {
+        synchronized (queryCache) {
+            return queryCache.get(originURL);
+        }
+    }
+
+    private static void putCachedQuery(String originURL, CachedQuery query) {
+        synchronized (queryCache) {
+            CachedQuery oldQuery = queryCache.put(originURL, query);
+
+            if (oldQuery != null) {
+                queryCacheSize -= oldQuery.body.length;
+            }
+
+            queryCacheSize += query.body.length;
+
+            // Expired responses are removed first, then the least recently
+            // used ones until the cache fits its size limit
+            Iterator<CachedQuery> iterator = queryCache.values().iterator();
+
+            while (iterator.hasNext()) {
+                CachedQuery cachedQuery = iterator.next();
+
+                if (cachedQuery.isExpired() || queryCacheSize > QUERY_CACHE_SIZE) {
+                    queryCacheSize -= cachedQuery.body.length;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private static void removeCachedQuery(String originURL) {
+        synchronized (queryCache) {
+            CachedQuery oldQuery = queryCache.remove(originURL);
+
+            if (oldQuery != null) {
+                queryCacheSize -= oldQuery.body.length;
+            }
+        }
+    }
+
+    private static Path getMirrorFolder() {
+        return Paths.get(Configuration.CACHE_FOLDER, MIRROR_FOLDER);
+    }
+
+    private static long getLastModifiedTime(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    private static void markUsed(Path mirrorPath) {
+        try {
+            Files.setLastModifiedTime(mirrorPath, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ex) {
+
+        }
+    }
+
+    private static void cleanUpMirrorFolder(boolean force) {
+        synchronized (mirrorCleanupLock) {
+            long now = System.currentTimeMillis();
+
+            // Unless forced, the folder is cleaned up at most once a minute
+            if (!force && now - lastMirrorCleanupTime < MIRROR_CLEANUP_MILLIS) {
+                return;
+            }
+
+            lastMirrorCleanupTime = now;
+            removeUnusedFiles(now);
+        }
+    }
+
+    private static void removeUnusedFiles(long now) {
+        Path mirrorFolder = getMirrorFolder();
+
+        if (!mirrorFolder.toFile().isDirectory()) {
+            return;
+        }
+
+        int maxMegabytes = Configuration.getSettings().getValue(SettingFields.MIRROR_CACHE_SIZE);
+        long maxSize = Math.max(0, maxMegabytes) * 1024L * 1024L;
+        List<Path> files;
+
+        try (Stream<Path> stream = Files.walk(mirrorFolder)) {
+            files = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        } catch (IOException ex) {
+            LOGGER.warning("Unable to clean up " + mirrorFolder + ": " + ex.getMessage());
+
+            return;
+        }
+
+        List<Path> keptFiles = new ArrayList<Path>();
+        Map<Path, Long> lastUsedTimes = new HashMap<Path, Long>();
+        long size = 0;
+
+        for (Path file : files) {
+            long lastModifiedTime = getLastModifiedTime(file);
+
+            if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                if (now - lastModifiedTime > STALE_TEMP_FILE_MILLIS) {
+                    file.toFile().delete();
+                }
+            } else {
+                keptFiles.add(file);
+                lastUsedTimes.put(file, lastModifiedTime);
+                size += file.toFile().length();
+            }
+        }
+
+        // Kept files are marked as used whenever they are served, so the
+        // least recently used files are removed first
+        keptFiles.sort(Comparator.comparingLong(lastUsedTimes::get));
+
+        for (Path file : keptFiles) {
+            if (size <= maxSize) {
+                break;
+            }
+
+            long length = file.toFile().length();
+
+            if (file.toFile().delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private static Path getMirrorPath(String checksum) {
+        String name = checksum.toLowerCase();
+
+        return getMirrorFolder().resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private static Path fetchFile(String originURL, String checksum, Path mirrorPath) throws IOException {
+        Path tempPath = Paths.get(mirrorPath + TEMP_SUFFIX);
+
+        MiscUtil.ensurePathExists(mirrorPath.getParent());
+
+        try (TransportResponse response = getFromOrigin(originURL, createOriginHeaders(ContentEncoding.ACCEPTED_ENCODINGS))) {
+            if (!response.isSuccessful()) {
+                return null;
+            }
+
+            Files.copy(response.getBody(), tempPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (!checksum.equalsIgnoreCase(MiscUtil.getFileChecksum(tempPath))) {
+            Files.deleteIfExists(tempPath);
+
+            LOGGER.warning("File from " + originURL + " does not match checksum " + checksum + ".");
+
+            return null;
+        }
+
+        Files.move(tempPath, mirrorPath, StandardCopyOption.REPLACE_EXISTING);
+        cleanUpMirrorFolder(false);
+
+        return mirrorPath;
+    }
+
+    private static Path getFile(String originURL, String checksum) throws IOException {
+        Path blobPath = BlobStore.getBlobPath(checksum);
+
+        // Installed files can be changed through their links, so they are
+        // checked before being served
+        if (blobPath.toFile().isFile() && checksum.equalsIgnoreCase(MiscUtil.getFileChecksum(blobPath))) {
+            return blobPath;
+        }
+
+        Path mirrorPath = getMirrorPath(checksum);
+
+        if (mirrorPath.toFile().isFile()) {
+            markUsed(mirrorPath);
+
+            return mirrorPath;
+        }
+
+        String key = checksum.toLowerCase();
+        Object lock = fetchLocks.computeIfAbsent(key, (String k) -> new Object());
+
+        // Clients asking for the same file at the same time wait for a single
+        // download of it
+        synchronized (lock) {
+            try {
+                if (mirrorPath.toFile().isFile()) {
+                    return mirrorPath;
+                }
+
+                return fetchFile(originURL, checksum, mirrorPath);
+            } finally {
+                fetchLocks.remove(key, lock);
+            }
+        }
+    }
+
+    private static void sendFile(HttpExchange exchange, Path filePath, String checksum) throws IOException {
+        long length = Files.size(filePath);
+        long start = 0;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        Headers responseHeaders = exchange.getResponseHeaders();
+
+        if (range != null && range.startsWith("bytes=") && range.endsWith("-")) {
+            try {
+                start = Long.parseLong(range.substring(6, range.length() - 1));
+            } catch (NumberFormatException ex) {
+                sendEmpty(exchange, HTTP_BAD_REQUEST);
+
+                return;
+            }
+
+            if (start >= length) {
+                responseHeaders.set("Content-Range", "bytes */" + length);
+                sendEmpty(exchange, HTTP_RANGE_NOT_SATISFIABLE);
+
+                return;
+            }
+        }
+
+        responseHeaders.set("Content-Type", "application/octet-stream");
+        responseHeaders.set(MirrorTransport.CHECKSUM_HEADER, checksum);
+
+        if (start > 0) {
+            responseHeaders.set("Content-Range", "bytes " + start + "-" + (length - 1) + "/" + length);
+        }
+
+        long bodyLength = length - start;
+        exchange.sendResponseHeaders(start > 0 ? HTTP_PARTIAL_CONTENT : HTTP_OK, bodyLength > 0 ? bodyLength : -1);
+
+        if (bodyLength > 0) {
+            try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ);
+                 OutputStream out = exchange.getResponseBody()) {
+                channel.position(start);
+                copy(Channels.newInputStream(channel), out);
+            }
+        }
+    }
+
+    private static void proxyFile(HttpExchange exchange, String originURL) throws IOException {
+        Map<String, String> headers = createOriginHeaders(ContentEncoding.IDENTITY);
+        String range = exchange.getRequestHeaders().getFirst("Range");
+
+        if (range != null) {
+            headers.put("Range", range);
+        }
+
+        try (TransportResponse response = originTransport.get(originURL, headers)) {
+            Headers responseHeaders = exchange.getResponseHeaders();
+            String contentRange = response.getHeader("Content-Range");
+
+            if (contentRange != null) {
+                responseHeaders.set("Content-Range", contentRange);
+            }
+
+            // The length of the body is not known, so it is sent in chunks
+            exchange.sendResponseHeaders(response.getStatusCode(), 0);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                copy(response.getBody(), out);
+            }
+        }
+    }
+
+    private static void handleFile(HttpExchange exchange) throws IOException {
+        try {
+            if (!checkClient(exchange)) {
+                return;
+            } else if (!exchange.getRequestMethod().equals("GET")) {
+                sendEmpty(exchange, HTTP_BAD_METHOD);
+
+                return;
+            }
+
+            String rawPath = exchange.getRequestURI().getRawPath();
+
+            if (rawPath.contains("..")) {
+                sendEmpty(exchange, HTTP_BAD_REQUEST);
+
+                return;
+            }
+
+            String originURL = Configuration.DISTRIBUTION_URL + rawPath;
+            String checksum = exchange.getRequestHeaders().getFirst(MirrorTransport.CHECKSUM_HEADER);
+
+            // Only files named by their checksum can be checked, so any other
+            // file is passed through without being kept
+            if (checksum == null || !CHECKSUM_PATTERN.matcher(checksum).matches()) {
+                proxyFile(exchange, originURL);
+
+                return;
+            }
+
+            Path filePath = getFile(originURL, checksum);
+
+            if (filePath == null) {
+                sendEmpty(exchange, HTTP_BAD_GATEWAY);
+
+                return;
+            }
+
+            sendFile(exchange, filePath, checksum);
+        } catch (IOException ex) {
+            LOGGER.fine("Unable to serve " + exchange.getRequestURI() + ": " + ex.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static CachedQuery fetchQuery(String originURL) throws IOException {
+        try (TransportResponse response = getFromOrigin(originURL, createOriginHeaders(ContentEncoding.ACCEPTED_ENCODINGS))) {
+            if (response.getStatusCode() != HTTP_OK) {
+                return null;
+            }
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            copy(response.getBody(), body);
+
+            return new CachedQuery(body.toByteArray(), response.getHeader("ETag"), response.getHeader("Last-Modified"),
+                                   response.getHeader("Content-Type"));
+        }
+    }
+
+    private static boolean isNotModified(HttpExchange exchange, CachedQuery query) {
+        Headers requestHeaders = exchange.getRequestHeaders();
+        String ifNoneMatch = requestHeaders.getFirst("If-None-Match");
+        String ifModifiedSince = requestHeaders.getFirst("If-Modified-Since");
+
+        return ((query.eTag != null && query.eTag.equals(ifNoneMatch))
+                || (query.lastModified != null && query.lastModified.equals(ifModifiedSince)));
+    }
+
+    private static void handleQuery(HttpExchange exchange) throws IOException {
+        try {
+            String rawQuery = exchange.getRequestURI().getRawQuery();
+
+            if (!checkClient(exchange)) {
+                return;
+            } else if (!exchange.getRequestMethod().equals("GET")) {
+                sendEmpty(exchange, HTTP_BAD_METHOD);
+
+                return;
+            } else if (rawQuery == null || !MirrorTransport.isMirroredQuery(rawQuery)) {
+                sendEmpty(exchange, HTTP_NOT_FOUND);
+
+                return;
+            }
+
+            String originURL = Configuration.BACKEND_URL + "?" + rawQuery;
+            CachedQuery query = getCachedQuery(originURL);
+
+            if (query == null || query.isExpired()) {
+                query = fetchQuery(originURL);
+
+                if (query == null) {
+                    removeCachedQuery(originURL);
+                    sendEmpty(exchange, HTTP_BAD_GATEWAY);
+
+                    return;
+                }
+
+                putCachedQuery(originURL, query);
+            }
+
+            Headers responseHeaders = exchange.getResponseHeaders();
+
+            if (query.eTag != null) {
+                responseHeaders.set("ETag", query.eTag);
+            }
+
+            if (query.lastModified != null) {
+                responseHeaders.set("Last-Modified", query.lastModified);
+            }
+
+            if (isNotModified(exchange, query)) {
+                sendEmpty(exchange, HTTP_NOT_MODIFIED);
+
+                return;
+            }
+
+            if (query.contentType != null) {
+                responseHeaders.set("Content-Type", query.contentType);
+            }
+
+            exchange.sendResponseHeaders(HTTP_OK, query.body.length > 0 ? query.body.length : -1);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(query.body);
+            }
+        } catch (IOException ex) {
+            LOGGER.fine("Unable to serve " + exchange.getRequestURI() + ": " + ex.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Starts the mirror on the specified port. Nothing is done if the mirror
+     * is already running
+     * @param port port the mirror listens on
+     * @throws IOException thrown if the mirror cannot listen on the port
+     */
+    public static void start(int port) throws IOException {
+        start(port, BackendHandler.getOriginTransport());
+    }
+
+    /**
+     * Starts the mirror on the specified port, reaching the backend through
+     * the specified transport. Nothing is done if the mirror is already
+     * running
+     * @param port port the mirror listens on, or 0 for any free port
+     * @param originTransport transport used to reach the backend
+     * @throws IOException thrown if the mirror cannot listen on the port
+     */
+    public static synchronized void start(int port, Transport originTransport) throws IOException {
+        if (server != null) {
+            return;
+        }
+
+        MirrorServer.originTransport = originTransport;
+
+        HttpServer newServer = HttpServer.create(new InetSocketAddress(port), 0);
+
+        newServer.createContext(MirrorTransport.FILES_PATH, MirrorServer::handleFile);
+        newServer.createContext(MirrorTransport.QUERY_PATH, MirrorServer::handleQuery);
+
+        executor = Executors.newCachedThreadPool((Runnable runnable) -> {
+            Thread thread = new Thread(runnable, "Mirror Worker");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        newServer.setExecutor(executor);
+        newServer.start();
+
+        server = newServer;
+
+        executor.submit(() -> cleanUpMirrorFolder(true));
+
+        LOGGER.info("Mirror is listening on port " + server.getAddress().getPort() + ".");
+    }
+
+    /**
+     * Stops the mirror if it is running
+     */
+    public static synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+
+        server.stop(0);
+        executor.shutdownNow();
+
+        server = null;
+        executor = null;
+
+        synchronized (queryCache) {
+            queryCache.clear();
+            queryCacheSize = 0;
+        }
+    }
+
+    /**
+     * Gets the port the mirror listens on
+     * @return port the mirror listens on, or -1 if it is not running
+     */
+    public static synchronized int getPort() {
+        return (server != null ? server.getAddress().getPort() : -1);
+    }
+
+    /**
+     * Checks if the mirror is running
+     * @return if the mirror is running
+     */
+    public static synchronized boolean isRunning() {
+        return (server != null);
+    }
+
+}
@@ -0,0 +1,254 @@
+package org.codespeak.distribution.client.handler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A cache of backend query responses keyed by their full URL. Each response
+ * is stored with its ETag and Last-Modified values so it can be revalidated
+ * with a conditional request, and with its decoded contents so a response
+ * that has not changed is not decoded again. The least recently used responses are evicted
+ * once the cache grows beyond its size limit
+ *
+ * @author Vector
+ */
+public class ResponseCache {
+
+    /**
+     * A class representing a cached response
+     */
+    public static class Entry {
+
+        private final String url;
+        private final String eTag;
+        private final String lastModified;
+        private final String body;
+        private final Object value;
+
+        private Entry(String url, String eTag, String lastModified, String body, Object value) {
+            this.url = url;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.body = body;
+            this.value = value;
+        }
+
+        /**
+         * Gets the ETag of this response
+         * @return ETag of this response, or null if there is none
+         */
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * Gets the Last-Modified value of this response
+         * @return Last-Modified value of this response, or null if there is none
+         */
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Gets the body of this response
+         * @return body of this response
+         */
+        public String getBody() {
+            return body;
+        }
+
+        /**
+         * Gets the decoded contents of this response. The contents are shared
+         * by every use of this response, so they must not be changed
+         * @return decoded contents of this response, or null if the response
+         * has not been decoded since it was loaded
+         */
+        public Object getValue() {
+            return value;
+        }
+
+        private int getSize() {
+            return body.length();
+        }
+
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final long maxSize;
+    private long size = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a response cache
+     * @param maxSize maximum total number of characters of the cached bodies
+     */
+    public ResponseCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+
+        while (size > maxSize && iterator.hasNext()) {
+            Entry entry = iterator.next();
+
+            size -= entry.getSize();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the cached response for the specified URL
+     * @param url the full URL of the query
+     * @return the cached response, or null if there is none
+     */
+    public synchronized Entry get(String url) {
+        return entries.get(url);
+    }
+
+    /**
+     * Stores a response. Responses without an ETag or Last-Modified value
+     * cannot be revalidated and are not stored
+     * @param url the full URL of the query
+     * @param eTag ETag of the response
+     * @param lastModified Last-Modified value of the response
+     * @param body body of the response
+     * @param value decoded contents of the response, or null if they have
+     * not been decoded
+     */
+    public synchronized void put(String url, String eTag, String lastModified, String body, Object value) {
+        if (eTag == null && lastModified == null) {
+            return;
+        }
+
+        Entry entry = new Entry(url, eTag, lastModified, body, value);
+
+        if (entry.getSize() > maxSize) {
+            return;
+        }
+
+        Entry oldEntry = entries.put(url, entry);
+
+        if (oldEntry != null) {
+            size -= oldEntry.getSize();
+        }
+
+        size += entry.getSize();
+        evict();
+    }
+
+    /**
+     * Records that a cached response was used after the backend confirmed it
+     * has not changed
+     */
+    public void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    /**
+     * Records that a response had to be downloaded in full
+     */
+    public void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of responses served from this cache
+     * @return number of responses served from this cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of responses that had to be downloaded in full
+     * @return number of responses that had to be downloaded in full
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of responses evicted from this cache
+     * @return number of responses evicted from this cache
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the total number of characters of the cached bodies
+     * @return total number of characters of the cached bodies
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Loads cached responses from the specified file
+     * @param file file to load cached responses from
+     */
+    public synchronized void load(File file) {
+        if (!file.exists()) {
+            return;
+        }
+
+        try {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            JSONArray json = new JSONArray(new String(bytes, StandardCharsets.UTF_8));
+
+            for (int i = 0; i < json.length(); i++) {
+                JSONObject obj = json.getJSONObject(i);
+                String eTag = obj.has("etag") ? obj.getString("etag") : null;
+                String lastModified = obj.has("last_modified") ? obj.getString("last_modified") : null;
+
+                put(obj.getString("url"), eTag, lastModified, obj.getString("body"), null);
+            }
+        } catch (IOException | JSONException ex) {
+            entries.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * Saves the cached responses to the specified file
+     * @param file file to save cached responses to
+     */
+    public synchronized void save(File file) {
+        JSONArray json = new JSONArray();
+
+        for (Entry entry : entries.values()) {
+            JSONObject obj = new JSONObject();
+
+            obj.put("url", entry.url);
+            obj.put("etag", entry.eTag);
+            obj.put("last_modified", entry.lastModified);
+            obj.put("body", entry.body);
+
+            json.put(obj);
+        }
+
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write(json.toString());
+        } catch (IOException ex) {
+
+        }
+    }
+
+}
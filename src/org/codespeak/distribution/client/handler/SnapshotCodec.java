@@ -0,0 +1,351 @@
+package org.codespeak.distribution.client.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import org.codespeak.distribution.client.data.Category;
+import org.codespeak.distribution.client.data.Dependency;
+import org.codespeak.distribution.client.data.Program;
+import org.codespeak.distribution.client.util.DateUtil;
+import org.codespeak.distribution.client.util.IntMap;
+
+/**
+ * A class that saves the data of the client as a compact binary snapshot and
+ * loads it straight into data objects. Every string is stored once in a string table, and
+ * categories, dependencies and programs are stored as fixed-layout records
+ * that refer to it. The snapshot ends with a CRC32 of its contents
+ *
+ * @author Vector
+ */
+public class SnapshotCodec {
+
+    private static final int MAGIC = 0x43534453;
+    private static final short VERSION = 1;
+    private static final int NO_STRING = -1;
+    // ID, category ID, seven string indexes, link start and link count
+    private static final int PROGRAM_RECORD_SIZE = 11 * 4;
+
+    private static class StringTable {
+
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+        private final List<String> strings = new ArrayList<String>();
+
+        private int intern(String value) {
+            if (value == null) {
+                return NO_STRING;
+            }
+
+            Integer index = indexes.get(value);
+
+            if (index == null) {
+                index = strings.size();
+                indexes.put(value, index);
+                strings.add(value);
+            }
+
+            return index;
+        }
+
+    }
+
+    private static void writeStrings(DataOutputStream out, StringTable table, String... values) throws IOException {
+        for (String value : values) {
+            out.writeInt(table.intern(value));
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, String[] strings) {
+        int index = buffer.getInt();
+
+        return (index != NO_STRING ? strings[index] : "");
+    }
+
+    /**
+     * Encodes the installed programs, their categories and dependencies, the
+     * IDs of the programs of the catalog and mapped data as a binary snapshot
+     * @return binary snapshot of the data
+     * @throws IOException thrown if the data could not be encoded
+     */
+    public static byte[] encode() throws IOException {
+        List<Program> installedPrograms = DataHandler.getInstalledPrograms();
+        Set<Category> savedCategories = new LinkedHashSet<Category>();
+        Set<Dependency> savedDependencies = new LinkedHashSet<Dependency>();
+
+        for (Program program : installedPrograms) {
+            savedCategories.add(program.getCategory());
+            savedDependencies.addAll(program.getDependencies().keySet());
+        }
+
+        StringTable table = new StringTable();
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(recordBytes);
+
+        // Records are written first so every string is interned before the
+        // string table is written in front of them
+        records.writeInt(savedCategories.size());
+
+        for (Category category : savedCategories) {
+            records.writeInt(category.getId());
+            writeStrings(records, table, category.getName(), category.getSlug(), category.getDescription());
+        }
+
+        records.writeInt(savedDependencies.size());
+
+        for (Dependency dependency : savedDependencies) {
+            records.writeInt(dependency.getId());
+            writeStrings(records, table, dependency.getName(), dependency.getDescription(), dependency.getURL());
+        }
+
+        List<Map.Entry<Dependency, Long>> links = new ArrayList<Map.Entry<Dependency, Long>>();
+        records.writeInt(installedPrograms.size());
+
+        for (Program program : installedPrograms) {
+            Map<Dependency, Long> programLinks = program.getDependencies();
+            Instant releaseTime = program.getReleaseTime();
+
+            records.writeInt(program.getId());
+            records.writeInt(program.getCategory().getId());
+            writeStrings(records, table, program.getSlug(), program.getName(), program.getDescription(),
+                         program.getLaunchFile(), program.getHelpFile(), program.getVersion(),
+                         (releaseTime != null ? releaseTime.toString() : null));
+            records.writeInt(links.size());
+            records.writeInt(programLinks.size());
+
+            links.addAll(programLinks.entrySet());
+        }
+
+        records.writeInt(links.size());
+
+        for (Map.Entry<Dependency, Long> link : links) {
+            records.writeInt(link.getKey().getId());
+            records.writeLong(link.getValue());
+        }
+
+        List<Integer> storedProgramIDs = DataHandler.getCatalogProgramIDs();
+        records.writeInt(storedProgramIDs.size());
+
+        for (int programId : storedProgramIDs) {
+            records.writeInt(programId);
+        }
+
+        Map<String, String> mappedData = DataHandler.getAllMappedData();
+        records.writeInt(mappedData.size());
+
+        for (Map.Entry<String, String> entry : mappedData.entrySet()) {
+            records.writeInt(table.intern(entry.getKey()));
+            records.writeInt(table.intern(entry.getValue()));
+        }
+
+        records.flush();
+
+        ByteArrayOutputStream snapshotBytes = new ByteArrayOutputStream(recordBytes.size() + 1024);
+        DataOutputStream out = new DataOutputStream(snapshotBytes);
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+        out.writeInt(table.strings.size());
+
+        for (String value : table.strings) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        recordBytes.writeTo(out);
+
+        CRC32 crc = new CRC32();
+        crc.update(snapshotBytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+
+        return snapshotBytes.toByteArray();
+    }
+
+    /**
+     * Decodes a binary snapshot and imports its data into the data handler.
+     * Nothing is imported if the snapshot is corrupt
+     * @param buffer heap buffer containing the whole snapshot
+     * @throws IOException thrown if the snapshot is corrupt or of an
+     * unsupported version
+     */
+    public static void decode(ByteBuffer buffer) throws IOException {
+        byte[] array = buffer.array();
+        int length = buffer.remaining();
+
+        if (length < 12) {
+            throw new IOException("Snapshot is truncated.");
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(array, buffer.arrayOffset() + buffer.position(), length - 4);
+
+        if ((int) crc.getValue() != buffer.getInt(buffer.position() + length - 4)) {
+            throw new IOException("Snapshot checksum does not match.");
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("File is not a data snapshot.");
+            }
+
+            short snapshotVersion = buffer.getShort();
+
+            if (snapshotVersion != VERSION) {
+                throw new IOException("Unsupported snapshot version: " + snapshotVersion);
+            }
+
+            buffer.getShort();
+
+            String[] strings = new String[buffer.getInt()];
+
+            for (int i = 0; i < strings.length; i++) {
+                int stringLength = buffer.getInt();
+
+                strings[i] = new String(array, buffer.arrayOffset() + buffer.position(), stringLength, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + stringLength);
+            }
+
+            IntMap<Category> categories = new IntMap<Category>();
+            IntMap<Dependency> dependencies = new IntMap<Dependency>();
+            List<Category> decodedCategories = new ArrayList<Category>();
+            List<Dependency> decodedDependencies = new ArrayList<Dependency>();
+            List<Program> decodedPrograms = new ArrayList<Program>();
+            List<Integer> storedProgramIDs = new ArrayList<Integer>();
+            Map<String, String> mappedData = new HashMap<String, String>();
+
+            int categoryCount = buffer.getInt();
+
+            for (int i = 0; i < categoryCount; i++) {
+                int id = buffer.getInt();
+                String name = readString(buffer, strings);
+                String slug = readString(buffer, strings);
+                String description = readString(buffer, strings);
+                Category category = Category.create(id, slug, name, description);
+
+                categories.put(id, category);
+                decodedCategories.add(category);
+            }
+
+            int dependencyCount = buffer.getInt();
+
+            for (int i = 0; i < dependencyCount; i++) {
+                int id = buffer.getInt();
+                String name = readString(buffer, strings);
+                String description = readString(buffer, strings);
+                String url = readString(buffer, strings);
+                Dependency dependency = Dependency.create(id, name, description, url);
+
+                dependencies.put(id, dependency);
+                decodedDependencies.add(dependency);
+            }
+
+            // Programs are stored before the dependency links they refer to,
+            // so their records are kept until the links have been read
+            int programCount = buffer.getInt();
+            int[] programRecords = new int[programCount];
+
+            for (int i = 0; i < programCount; i++) {
+                programRecords[i] = buffer.position();
+                buffer.position(buffer.position() + PROGRAM_RECORD_SIZE);
+            }
+
+            int linkCount = buffer.getInt();
+            int[] linkIds = new int[linkCount];
+            long[] linkFlags = new long[linkCount];
+
+            for (int i = 0; i < linkCount; i++) {
+                linkIds[i] = buffer.getInt();
+                linkFlags[i] = buffer.getLong();
+            }
+
+            int end = buffer.position();
+
+            for (int i = 0; i < programCount; i++) {
+                buffer.position(programRecords[i]);
+
+                int id = buffer.getInt();
+                Category category = categories.get(buffer.getInt());
+                String slug = readString(buffer, strings);
+                String name = readString(buffer, strings);
+                String description = readString(buffer, strings);
+                String launchFile = readString(buffer, strings);
+                String helpFile = readString(buffer, strings);
+                String version = readString(buffer, strings);
+                int releaseTimeIndex = buffer.getInt();
+                Instant releaseTime = (releaseTimeIndex != NO_STRING ? DateUtil.getInstant(strings[releaseTimeIndex]) : null);
+                int linkStart = buffer.getInt();
+                int programLinkCount = buffer.getInt();
+                Map<Dependency, Long> programDependencies = new HashMap<Dependency, Long>();
+
+                for (int j = linkStart; j < linkStart + programLinkCount; j++) {
+                    if (linkIds[j] > 0) {
+                        programDependencies.put(dependencies.get(linkIds[j]), linkFlags[j]);
+                    }
+                }
+
+                decodedPrograms.add(Program.create(id, category, slug, name, description, launchFile, helpFile,
+                                                   version, releaseTime, programDependencies, true));
+            }
+
+            buffer.position(end);
+
+            int storedProgramIDCount = buffer.getInt();
+
+            for (int i = 0; i < storedProgramIDCount; i++) {
+                storedProgramIDs.add(buffer.getInt());
+            }
+
+            int mappedDataCount = buffer.getInt();
+
+            for (int i = 0; i < mappedDataCount; i++) {
+                String key = strings[buffer.getInt()];
+                String value = strings[buffer.getInt()];
+
+                mappedData.put(key, value);
+            }
+
+            DataHandler.importData(decodedCategories, decodedDependencies, decodedPrograms, storedProgramIDs, mappedData);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new IOException("Snapshot is corrupt.", ex);
+        }
+    }
+
+    /**
+     * Reads a binary snapshot from the specified file with a single read and
+     * imports its data into the data handler
+     * @param file file containing the snapshot
+     * @throws IOException thrown if the file could not be read or is corrupt
+     */
+    public static void load(File file) throws IOException {
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == -1) {
+                    throw new IOException("Snapshot is truncated.");
+                }
+            }
+
+            buffer.flip();
+
+            decode(buffer);
+        }
+    }
+
+}
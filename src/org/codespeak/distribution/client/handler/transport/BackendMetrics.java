@@ -0,0 +1,169 @@
+package org.codespeak.distribution.client.handler.transport;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class that counts the requests made to the backend and how they ended
+ *
+ * @author Vector
+ */
+public class BackendMetrics {
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong circuitOpenings = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong decompressedBytes = new AtomicLong();
+    private volatile CircuitBreaker.State circuitState = CircuitBreaker.State.CLOSED;
+
+    /**
+     * Records that a request was sent to the backend
+     */
+    public void recordRequest() {
+        requests.incrementAndGet();
+    }
+
+    /**
+     * Records that a request failed
+     * @param timedOut whether the request failed because it timed out
+     */
+    public void recordFailure(boolean timedOut) {
+        failures.incrementAndGet();
+
+        if (timedOut) {
+            timeouts.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records that a failed request is being tried again
+     */
+    public void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    /**
+     * Records that a request was refused because the circuit breaker is open
+     */
+    public void recordRejected() {
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * Records that the circuit breaker has opened
+     */
+    public void recordCircuitOpened() {
+        circuitOpenings.incrementAndGet();
+    }
+
+    /**
+     * Records a response body that was transferred compressed
+     * @param compressedBytes number of bytes received
+     * @param decompressedBytes number of bytes after decompression
+     */
+    public void recordCompressedTransfer(long compressedBytes, long decompressedBytes) {
+        this.compressedBytes.addAndGet(compressedBytes);
+        this.decompressedBytes.addAndGet(decompressedBytes);
+    }
+
+    /**
+     * Sets the current state of the circuit breaker
+     * @param circuitState current state of the circuit breaker
+     */
+    public void setCircuitState(CircuitBreaker.State circuitState) {
+        this.circuitState = circuitState;
+    }
+
+    /**
+     * Gets the number of requests sent to the backend, including retries
+     * @return number of requests sent to the backend
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Gets the number of requests that failed
+     * @return number of requests that failed
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Gets the number of requests that failed because they timed out
+     * @return number of requests that timed out
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * Gets the number of times a failed request was tried again
+     * @return number of retries
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Gets the number of requests refused because the circuit breaker was open
+     * @return number of refused requests
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Gets the number of times the circuit breaker has opened
+     * @return number of times the circuit breaker has opened
+     */
+    public long getCircuitOpenings() {
+        return circuitOpenings.get();
+    }
+
+    /**
+     * Gets the number of bytes received in compressed response bodies
+     * @return number of bytes received in compressed response bodies
+     */
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    /**
+     * Gets the number of bytes compressed response bodies had after
+     * decompression
+     * @return number of bytes after decompression
+     */
+    public long getDecompressedBytes() {
+        return decompressedBytes.get();
+    }
+
+    /**
+     * Gets the number of bytes compression saved from being transferred
+     * @return number of bytes saved by compression
+     */
+    public long getBytesSaved() {
+        return getDecompressedBytes() - getCompressedBytes();
+    }
+
+    /**
+     * Gets the current state of the circuit breaker
+     * @return current state of the circuit breaker
+     */
+    public CircuitBreaker.State getCircuitState() {
+        return circuitState;
+    }
+
+    @Override
+    public String toString() {
+        return "requests: " + getRequests() + ", failures: " + getFailures() + ", timeouts: " + getTimeouts()
+               + ", retries: " + getRetries() + ", rejected: " + getRejected() + ", circuit: " + getCircuitState()
+               + " (opened " + getCircuitOpenings() + " times), compressed bytes: " + getCompressedBytes()
+               + ", bytes saved: " + getBytesSaved();
+    }
+
+}
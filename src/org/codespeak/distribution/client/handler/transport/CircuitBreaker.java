@@ -0,0 +1,180 @@
+package org.codespeak.distribution.client.handler.transport;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A class that stops requests to the backend after repeated failures. Once
+ * the number of consecutive failures reaches the threshold the breaker opens,
+ * and requests are refused right away instead of waiting on a server that is
+ * not responding. After the open duration a single trial request is let
+ * through, and the breaker closes again if it succeeds
+ *
+ * @author Vector
+ */
+public class CircuitBreaker {
+
+    /**
+     * An enum containing the states of a circuit breaker
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * An interface used to receive changes to the state of a circuit breaker
+     */
+    public interface Listener {
+
+        /**
+         * Called when the state of the circuit breaker changes. This may be
+         * called from any thread making requests
+         * @param state the new state of the circuit breaker
+         */
+        void onStateChange(State state);
+
+    }
+
+    private final int failureThreshold;
+    private final long openDurationMillis;
+    private final BackendMetrics metrics;
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedTime = 0;
+    private boolean trialInProgress = false;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    /**
+     * Creates a circuit breaker
+     * @param failureThreshold number of consecutive failures that opens the
+     * breaker
+     * @param openDurationMillis time the breaker stays open before a trial
+     * request is allowed
+     * @param metrics metrics the state of the breaker is recorded in
+     */
+    public CircuitBreaker(int failureThreshold, long openDurationMillis, BackendMetrics metrics) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDurationMillis = openDurationMillis;
+        this.metrics = metrics;
+
+        metrics.setCircuitState(state);
+    }
+
+    private State setState(State newState) {
+        if (state == newState) {
+            return null;
+        }
+
+        state = newState;
+        metrics.setCircuitState(newState);
+
+        if (newState == State.OPEN) {
+            openedTime = System.currentTimeMillis();
+            metrics.recordCircuitOpened();
+        }
+
+        return newState;
+    }
+
+    private void notifyListener(State changedState) {
+        if (changedState == null) {
+            return;
+        }
+
+        for (Listener listener : listeners) {
+            listener.onStateChange(changedState);
+        }
+    }
+
+    /**
+     * Adds a listener that receives changes to the state of this breaker
+     * @param listener listener that receives changes
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Gets the state of this breaker
+     * @return state of this breaker
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Checks if a request may be made. Every allowed request must be followed
+     * by a call to recordSuccess, recordFailure or recordAbandoned
+     * @return if a request may be made
+     */
+    public boolean allowRequest() {
+        State changedState = null;
+        boolean allowed = true;
+
+        synchronized (this) {
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() - openedTime < openDurationMillis) {
+                    allowed = false;
+                } else {
+                    changedState = setState(State.HALF_OPEN);
+                }
+            }
+
+            if (allowed && state == State.HALF_OPEN) {
+                if (trialInProgress) {
+                    allowed = false;
+                } else {
+                    trialInProgress = true;
+                }
+            }
+        }
+
+        notifyListener(changedState);
+
+        return allowed;
+    }
+
+    /**
+     * Records that an allowed request reached the backend
+     */
+    public void recordSuccess() {
+        State changedState = null;
+
+        synchronized (this) {
+            consecutiveFailures = 0;
+            trialInProgress = false;
+            changedState = setState(State.CLOSED);
+        }
+
+        notifyListener(changedState);
+    }
+
+    /**
+     * Records that an allowed request failed
+     */
+    public void recordFailure() {
+        State changedState = null;
+
+        synchronized (this) {
+            consecutiveFailures++;
+            trialInProgress = false;
+
+            if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                changedState = setState(State.OPEN);
+            }
+        }
+
+        notifyListener(changedState);
+    }
+
+    /**
+     * Records that an allowed request was given up on before it finished,
+     * such as when the thread making it was interrupted
+     */
+    public synchronized void recordAbandoned() {
+        trialInProgress = false;
+    }
+
+}
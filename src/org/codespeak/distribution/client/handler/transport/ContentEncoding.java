@@ -0,0 +1,198 @@
+package org.codespeak.distribution.client.handler.transport;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A class that decompresses the bodies of responses sent with a content
+ * encoding. Bodies are decompressed while they are read, so a compressed
+ * response is never held in memory as a whole
+ *
+ * @author Vector
+ */
+public class ContentEncoding {
+
+    /**
+     * The value of the Accept-Encoding header for requests that may be
+     * compressed
+     */
+    public static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+
+    /**
+     * The value of the Accept-Encoding header for requests that must not be
+     * compressed, such as requests for a range of a file
+     */
+    public static final String IDENTITY = "identity";
+
+    private static final int BUFFER_SIZE = 16384;
+
+    /**
+     * An input stream that counts the bytes read through it
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count = 0;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+
+            if (b != -1) {
+                count++;
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+
+            if (read > 0) {
+                count += read;
+            }
+
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+    }
+
+    /**
+     * An input stream that records the transfer in the metrics once it is
+     * closed
+     */
+    private static class DecodedInputStream extends FilterInputStream {
+
+        private final CountingInputStream wireStream;
+        private final BackendMetrics metrics;
+        private boolean closed = false;
+
+        private DecodedInputStream(CountingInputStream decodedStream, CountingInputStream wireStream, BackendMetrics metrics) {
+            super(decodedStream);
+
+            this.wireStream = wireStream;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                metrics.recordCompressedTransfer(wireStream.count, ((CountingInputStream) in).count);
+            }
+
+            super.close();
+        }
+
+    }
+
+    private static InputStream createDeflateStream(InputStream in) throws IOException {
+        PushbackInputStream pushbackStream = new PushbackInputStream(in, 2);
+        byte[] header = new byte[2];
+        int read = 0;
+
+        while (read < header.length) {
+            int count = pushbackStream.read(header, read, header.length - read);
+
+            if (count == -1) {
+                break;
+            }
+
+            read += count;
+        }
+
+        pushbackStream.unread(header, 0, read);
+
+        // Deflate bodies should have a zlib header, but some servers send
+        // raw deflate data without one
+        int first = header[0] & 0xFF;
+        int second = header[1] & 0xFF;
+        boolean zlibWrapped = (read == 2 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0);
+
+        return new InflaterInputStream(pushbackStream, new Inflater(!zlibWrapped), BUFFER_SIZE);
+    }
+
+    /**
+     * Decompresses the body of the specified response while it is read. The
+     * body of a response without a content encoding is left as is. The
+     * response returned in place of the specified response is closed along
+     * with it
+     * @param response the response to decompress
+     * @param metrics metrics the compressed transfer is recorded in once the
+     * body is closed
+     * @return response with a decompressed body
+     * @throws IOException thrown if the content encoding is not supported or
+     * the body cannot be read
+     */
+    public static TransportResponse decode(TransportResponse response, BackendMetrics metrics) throws IOException {
+        String encoding = response.getHeader("Content-Encoding");
+
+        if (encoding == null || !response.isSuccessful()) {
+            return response;
+        }
+
+        encoding = encoding.trim().toLowerCase();
+
+        if (encoding.isEmpty() || encoding.equals(IDENTITY)) {
+            return response;
+        }
+
+        CountingInputStream wireStream = new CountingInputStream(response.getBody());
+        InputStream decompressedStream;
+
+        try {
+            switch (encoding) {
+                case "gzip":
+                case "x-gzip":
+                    decompressedStream = new GZIPInputStream(wireStream, BUFFER_SIZE);
+
+                    break;
+                case "deflate":
+                    decompressedStream = createDeflateStream(wireStream);
+
+                    break;
+                default:
+                    throw new IOException("Unsupported content encoding: " + encoding);
+            }
+        } catch (IOException ex) {
+            response.close();
+
+            throw ex;
+        }
+
+        // The length and encoding headers describe the compressed body, so
+        // they do not apply to the decompressed one
+        Map<String, String> headers = new HashMap<String, String>(response.getHeaders());
+        headers.remove("content-encoding");
+        headers.remove("content-length");
+
+        InputStream body = new DecodedInputStream(new CountingInputStream(decompressedStream), wireStream, metrics);
+
+        return new TransportResponse(response.getStatusCode(), headers, body);
+    }
+
+}
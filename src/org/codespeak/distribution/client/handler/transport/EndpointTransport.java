@@ -0,0 +1,264 @@
+package org.codespeak.distribution.client.handler.transport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * A transport that sends requests for the backend to one of several
+ * endpoints serving the same content. Requests name the backend by its
+ * canonical URL, which is replaced with the URL of the endpoint. Endpoints
+ * are tried fastest first, and the next one is tried if an endpoint cannot be
+ * reached or has a server error. The speed of each endpoint is measured from
+ * the requests made to it and from probes made in the background
+ *
+ * @author Vector
+ */
+public class EndpointTransport implements Transport {
+
+    private static final Logger LOGGER = Logger.getLogger(EndpointTransport.class.getName());
+
+    private static final double LATENCY_WEIGHT = 0.3;
+    private static final long UNHEALTHY_MILLIS = 30000;
+    private static final long PROBE_INTERVAL_MILLIS = 5 * 60 * 1000;
+    private static final long NANOS_PER_MILLI = 1000000;
+    // Headers of a request that are also sent with probes. Headers that
+    // describe the request itself, such as ranges, validators and checksums,
+    // would change the response to the probe path
+    private static final String[] PROBE_HEADERS = {"User-Agent"};
+
+    /**
+     * A class representing an endpoint serving the backend
+     */
+    public static class Endpoint {
+
+        private final String url;
+        private final int index;
+        private long latencyNanos = -1;
+        private volatile long retryTime = 0;
+
+        private Endpoint(String url, int index) {
+            this.url = url;
+            this.index = index;
+        }
+
+        private synchronized void recordLatency(long nanos) {
+            latencyNanos = (latencyNanos < 0 ? nanos : (long) (LATENCY_WEIGHT * nanos + (1 - LATENCY_WEIGHT) * latencyNanos));
+            retryTime = 0;
+        }
+
+        private void recordFailure() {
+            retryTime = System.currentTimeMillis() + UNHEALTHY_MILLIS;
+        }
+
+        private synchronized long getSortLatency() {
+            return (latencyNanos < 0 ? Long.MAX_VALUE : latencyNanos);
+        }
+
+        /**
+         * Gets the base URL of this endpoint
+         * @return base URL of this endpoint
+         */
+        public String getURL() {
+            return url;
+        }
+
+        /**
+         * Gets the average time this endpoint takes to respond
+         * @return average time in milliseconds this endpoint takes to
+         * respond, or -1 if it has not been measured
+         */
+        public synchronized long getLatencyMillis() {
+            return (latencyNanos < 0 ? -1 : latencyNanos / NANOS_PER_MILLI);
+        }
+
+        /**
+         * Checks if this endpoint is healthy. An endpoint that failed recently
+         * is only tried after every healthy endpoint
+         * @return if this endpoint is healthy
+         */
+        public boolean isHealthy() {
+            return (System.currentTimeMillis() >= retryTime);
+        }
+
+    }
+
+    private static final Comparator<Endpoint> ENDPOINT_ORDER = Comparator.comparing((Endpoint endpoint) -> !endpoint.isHealthy())
+                                                                          .thenComparingLong(Endpoint::getSortLatency)
+                                                                          .thenComparingInt((Endpoint endpoint) -> endpoint.index);
+
+    private final String canonicalURL;
+    private final String probePath;
+    private final List<Endpoint> endpoints = new ArrayList<Endpoint>();
+    private final Transport transport;
+    private final AtomicBoolean probing = new AtomicBoolean(false);
+    private volatile long lastProbeTime = 0;
+
+    /**
+     * Creates a transport that sends requests to a list of endpoints
+     * @param canonicalURL URL requests use to name the backend
+     * @param endpointURLs base URLs of the endpoints, most preferred first
+     * @param probePath path requested from each endpoint to check its health
+     * @param transport transport the requests are made through
+     */
+    public EndpointTransport(String canonicalURL, List<String> endpointURLs, String probePath, Transport transport) {
+        this.canonicalURL = canonicalURL;
+        this.probePath = probePath;
+        this.transport = transport;
+
+        for (String endpointURL : endpointURLs) {
+            String url = (endpointURL.endsWith("/") ? endpointURL.substring(0, endpointURL.length() - 1) : endpointURL);
+
+            endpoints.add(new Endpoint(url, endpoints.size()));
+        }
+
+        if (endpoints.isEmpty()) {
+            endpoints.add(new Endpoint(canonicalURL, 0));
+        }
+    }
+
+    private List<Endpoint> getOrderedEndpoints() {
+        List<Endpoint> orderedEndpoints = new ArrayList<Endpoint>(endpoints);
+        orderedEndpoints.sort(ENDPOINT_ORDER);
+
+        return orderedEndpoints;
+    }
+
+    private static Map<String, String> createProbeHeaders(Map<String, String> headers) {
+        Map<String, String> probeHeaders = new HashMap<String, String>();
+
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            for (String probeHeader : PROBE_HEADERS) {
+                if (probeHeader.equalsIgnoreCase(entry.getKey())) {
+                    probeHeaders.put(probeHeader, entry.getValue());
+                }
+            }
+        }
+
+        return probeHeaders;
+    }
+
+    private void probeEndpoint(Endpoint endpoint, Map<String, String> headers) {
+        long start = System.nanoTime();
+
+        try {
+            TransportResponse response = transport.get(endpoint.url + probePath, headers);
+
+            if (response.getStatusCode() >= 500) {
+                endpoint.recordFailure();
+            } else {
+                endpoint.recordLatency(System.nanoTime() - start);
+            }
+
+            response.discard();
+        } catch (IOException ex) {
+            endpoint.recordFailure();
+        }
+    }
+
+    private void probeInBackground(Map<String, String> headers) {
+        if (endpoints.size() < 2 || System.currentTimeMillis() - lastProbeTime < PROBE_INTERVAL_MILLIS
+                || !probing.compareAndSet(false, true)) {
+            return;
+        }
+
+        lastProbeTime = System.currentTimeMillis();
+
+        // The headers are copied before the request goes on to use them
+        Map<String, String> probeHeaders = createProbeHeaders(headers);
+        Thread thread = new Thread(() -> {
+            try {
+                probeEndpoints(probeHeaders);
+            } finally {
+                probing.set(false);
+            }
+        }, "Endpoint Probe");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Probes every endpoint, measuring how fast it responds and whether it
+     * can be reached
+     * @param headers headers of a request. Only the headers that do not
+     * describe the request itself are sent with each probe
+     */
+    public void probeEndpoints(Map<String, String> headers) {
+        Map<String, String> probeHeaders = createProbeHeaders(headers);
+
+        for (Endpoint endpoint : endpoints) {
+            probeEndpoint(endpoint, probeHeaders);
+        }
+    }
+
+    /**
+     * Gets an unmodifiable list of the endpoints of this transport in the
+     * order they are tried
+     * @return unmodifiable list of the endpoints
+     */
+    public List<Endpoint> getEndpoints() {
+        return Collections.unmodifiableList(getOrderedEndpoints());
+    }
+
+    @Override
+    public TransportResponse get(String url, Map<String, String> headers) throws IOException {
+        if (!url.startsWith(canonicalURL)) {
+            return transport.get(url, headers);
+        }
+
+        String path = url.substring(canonicalURL.length());
+        IOException lastFailure = null;
+        TransportResponse lastResponse = null;
+
+        probeInBackground(headers);
+
+        for (Endpoint endpoint : getOrderedEndpoints()) {
+            if (lastResponse != null || lastFailure != null) {
+                LOGGER.info("Failing over to " + endpoint.url + ".");
+            }
+
+            if (lastResponse != null) {
+                lastResponse.discard();
+                lastResponse = null;
+            }
+
+            long start = System.nanoTime();
+
+            try {
+                TransportResponse response = transport.get(endpoint.url + path, headers);
+
+                if (response.getStatusCode() < 500) {
+                    endpoint.recordLatency(System.nanoTime() - start);
+
+                    return response;
+                }
+
+                endpoint.recordFailure();
+                lastResponse = response;
+            } catch (IOException ex) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw ex;
+                }
+
+                endpoint.recordFailure();
+                lastFailure = ex;
+            }
+        }
+
+        // Every endpoint failed, so the last failure is passed on for the
+        // caller to retry or report
+        if (lastResponse != null) {
+            return lastResponse;
+        }
+
+        throw lastFailure;
+    }
+
+}
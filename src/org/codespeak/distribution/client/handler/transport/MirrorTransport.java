@@ -0,0 +1,139 @@
+package org.codespeak.distribution.client.handler.transport;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.codespeak.distribution.client.Configuration;
+import org.codespeak.distribution.client.data.query.QueryTypes;
+
+/**
+ * A transport that tries a mirror on the local network before the backend.
+ * Program files and catalog queries are requested from the mirror first, and
+ * from the backend if the mirror cannot be reached, does not have them or
+ * sends a file that is not the one asked for. A mirror that cannot be reached
+ * is not tried again for a while. Files are checked against checksums, so
+ * the queries carrying those checksums are always sent to the backend
+ *
+ * @author Vector
+ */
+public class MirrorTransport implements Transport {
+
+    /**
+     * The header carrying the checksum of a program file. A client sends it
+     * to name the file it expects, and a mirror sends it back with the file
+     */
+    public static final String CHECKSUM_HEADER = "X-Checksum";
+
+    /**
+     * The path program files are served under
+     */
+    public static final String FILES_PATH = "/files/";
+
+    /**
+     * The path queries are served under by a mirror
+     */
+    public static final String QUERY_PATH = "/query";
+
+    private static final long MIRROR_RETRY_MILLIS = 60000;
+    private static final String QUERY_PARAMETER = "query=";
+    private static final Set<String> ORIGIN_ONLY_QUERIES = new HashSet<String>(Arrays.asList(
+            QueryTypes.GET_PROGRAM_FILES.getName(),
+            QueryTypes.CHECK_CLIENT_VERSION.getName()
+    ));
+    private static final int HTTP_NOT_FOUND = 404;
+
+    private final String mirrorURL;
+    private final Transport mirrorTransport;
+    private final Transport originTransport;
+    private volatile long mirrorRetryTime = 0;
+
+    /**
+     * Creates a transport that tries a mirror before the backend
+     * @param mirrorURL base URL of the mirror, such as http://host:8787
+     * @param mirrorTransport transport used to reach the mirror
+     * @param originTransport transport used to reach the backend
+     */
+    public MirrorTransport(String mirrorURL, Transport mirrorTransport, Transport originTransport) {
+        this.mirrorURL = (mirrorURL.endsWith("/") ? mirrorURL.substring(0, mirrorURL.length() - 1) : mirrorURL);
+        this.mirrorTransport = mirrorTransport;
+        this.originTransport = originTransport;
+    }
+
+    private String getMirrorURL(String url) {
+        if (url.startsWith(Configuration.DISTRIBUTION_URL + FILES_PATH)) {
+            return mirrorURL + url.substring(Configuration.DISTRIBUTION_URL.length());
+        } else if (url.startsWith(Configuration.BACKEND_URL + "?")) {
+            String rawQuery = url.substring(Configuration.BACKEND_URL.length() + 1);
+
+            if (isMirroredQuery(rawQuery)) {
+                return mirrorURL + QUERY_PATH + "?" + rawQuery;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks if the query with the specified query string may be served by a
+     * mirror. Queries returning the checksums that files are checked against, or
+     * deciding which client files are downloaded, are only trusted from the
+     * backend, as a mirror sending them could send matching files as well
+     * @param rawQuery the query string of the query
+     * @return if the query may be served by a mirror
+     */
+    public static boolean isMirroredQuery(String rawQuery) {
+        for (String parameter : rawQuery.split("&")) {
+            if (parameter.startsWith(QUERY_PARAMETER)) {
+                return !ORIGIN_ONLY_QUERIES.contains(parameter.substring(QUERY_PARAMETER.length()));
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isUsable(TransportResponse response, Map<String, String> headers) {
+        int statusCode = response.getStatusCode();
+
+        if (statusCode == HTTP_NOT_FOUND || statusCode >= 500) {
+            return false;
+        }
+
+        String expectedChecksum = headers.get(CHECKSUM_HEADER);
+
+        if (expectedChecksum == null || !response.isSuccessful()) {
+            return true;
+        }
+
+        // The file is checked again once downloaded, but a mirror sending a
+        // different file is skipped before any of it is transferred
+        return expectedChecksum.equalsIgnoreCase(response.getHeader(CHECKSUM_HEADER));
+    }
+
+    @Override
+    public TransportResponse get(String url, Map<String, String> headers) throws IOException {
+        String mirroredURL = getMirrorURL(url);
+
+        if (mirroredURL != null && System.currentTimeMillis() >= mirrorRetryTime) {
+            try {
+                TransportResponse response = mirrorTransport.get(mirroredURL, headers);
+
+                if (isUsable(response, headers)) {
+                    return response;
+                }
+
+                response.discard();
+            } catch (IOException ex) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw ex;
+                }
+
+                mirrorRetryTime = System.currentTimeMillis() + MIRROR_RETRY_MILLIS;
+            }
+        }
+
+        return originTransport.get(url, headers);
+    }
+
+}
@@ -0,0 +1,120 @@
+package org.codespeak.distribution.client.handler.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A transport that retries failed requests made through another transport.
+ * Every request made by the client is a GET, so every request is safe to try
+ * again. Retries wait for a random time of up to an exponentially growing
+ * limit, so clients that failed at the same time do not retry at the same
+ * time. Requests are refused right away while the circuit breaker is open
+ *
+ * @author Vector
+ */
+public class ResilientTransport implements Transport {
+
+    private static final long BASE_BACKOFF_MILLIS = 250;
+    private static final long MAX_BACKOFF_MILLIS = 4000;
+
+    private final Transport transport;
+    private final int maxAttempts;
+    private final CircuitBreaker circuitBreaker;
+    private final BackendMetrics metrics;
+
+    /**
+     * Creates a transport that retries requests made through another transport
+     * @param transport transport the requests are made through
+     * @param maxAttempts maximum number of times a request is made
+     * @param circuitBreaker circuit breaker guarding the requests
+     * @param metrics metrics the requests are recorded in
+     */
+    public ResilientTransport(Transport transport, int maxAttempts, CircuitBreaker circuitBreaker, BackendMetrics metrics) {
+        this.transport = transport;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.circuitBreaker = circuitBreaker;
+        this.metrics = metrics;
+    }
+
+    private static boolean isServerError(int statusCode) {
+        return (statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504);
+    }
+
+    private static void backOff(int attempt) throws InterruptedIOException {
+        long limit = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempt - 1));
+
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(limit + 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Request was interrupted.");
+        }
+    }
+
+    @Override
+    public TransportResponse get(String url, Map<String, String> headers) throws IOException {
+        if (!circuitBreaker.allowRequest()) {
+            metrics.recordRejected();
+
+            throw new IOException("The distribution server is not responding. Requests are paused for a short time.");
+        }
+
+        // The breaker is told the outcome of the request once all of its
+        // attempts are made, so a single request that is retried counts as
+        // one failure instead of one for every attempt
+        for (int attempt = 1; ; attempt++) {
+            metrics.recordRequest();
+
+            try {
+                TransportResponse response = transport.get(url, headers);
+
+                if (!isServerError(response.getStatusCode())) {
+                    circuitBreaker.recordSuccess();
+
+                    return response;
+                }
+
+                metrics.recordFailure(false);
+
+                // The last response is returned so the caller can report
+                // the status of it
+                if (attempt >= maxAttempts) {
+                    circuitBreaker.recordFailure();
+
+                    return response;
+                }
+
+                response.discard();
+            } catch (IOException ex) {
+                if (Thread.currentThread().isInterrupted()) {
+                    circuitBreaker.recordAbandoned();
+
+                    throw ex;
+                }
+
+                metrics.recordFailure(ex instanceof SocketTimeoutException);
+
+                if (attempt >= maxAttempts) {
+                    circuitBreaker.recordFailure();
+
+                    throw ex;
+                }
+            }
+
+            metrics.recordRetry();
+
+            try {
+                backOff(attempt);
+            } catch (InterruptedIOException ex) {
+                circuitBreaker.recordAbandoned();
+
+                throw ex;
+            }
+        }
+    }
+
+}
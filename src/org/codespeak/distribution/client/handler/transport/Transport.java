@@ -0,0 +1,23 @@
+package org.codespeak.distribution.client.handler.transport;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * An interface representing the transport used to reach the backend
+ *
+ * @author Vector
+ */
+public interface Transport {
+
+    /**
+     * Performs a GET request on the specified URL
+     * @param url the URL to request
+     * @param headers request headers to send with the request
+     * @return the response of the request. The response must be closed
+     * once its body is no longer needed
+     * @throws IOException thrown if the request could not be made
+     */
+    public TransportResponse get(String url, Map<String, String> headers) throws IOException;
+
+}
@@ -0,0 +1,109 @@
+package org.codespeak.distribution.client.handler.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A class representing a response returned by a transport
+ *
+ * @author Vector
+ */
+public class TransportResponse implements Closeable {
+
+    private static final int MAX_DISCARDED_BYTES = 64 * 1024;
+
+    private final int statusCode;
+    private final Map<String, String> headers = new HashMap<String, String>();
+    private final InputStream body;
+
+    public TransportResponse(int statusCode, Map<String, String> headers, InputStream body) {
+        this.statusCode = statusCode;
+        this.body = (body != null ? body : new ByteArrayInputStream(new byte[0]));
+
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (entry.getKey() != null) {
+                this.headers.put(entry.getKey().toLowerCase(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Gets the HTTP status code of this response
+     * @return HTTP status code of this response
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Checks if the status code of this response indicates success
+     * @return if the status code of this response indicates success
+     */
+    public boolean isSuccessful() {
+        return (statusCode >= 200 && statusCode < 300);
+    }
+
+    /**
+     * Gets a header of this response. Header names are not case sensitive
+     * @param name name of the header
+     * @return value of the header, or null if it is not present
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    /**
+     * Gets an unmodifiable map of the headers of this response. The names of
+     * the headers are in lower case
+     * @return unmodifiable map of the headers of this response
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Gets the body of this response
+     * @return body of this response
+     */
+    public InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * Reads and drops the rest of the body of this response, then closes it.
+     * A connection is only reused once its response has been read completely,
+     * so responses that are not used, such as error responses, are discarded
+     * instead of closed. Bodies larger than a small limit are closed without
+     * being read, since reading them costs more than a new connection
+     */
+    public void discard() {
+        try {
+            byte[] buffer = new byte[8192];
+            int discardedBytes = 0;
+            int bytesRead;
+
+            while (discardedBytes < MAX_DISCARDED_BYTES && (bytesRead = body.read(buffer)) != -1) {
+                discardedBytes += bytesRead;
+            }
+        } catch (IOException ex) {
+
+        }
+
+        try {
+            body.close();
+        } catch (IOException ex) {
+
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        body.close();
+    }
+
+}
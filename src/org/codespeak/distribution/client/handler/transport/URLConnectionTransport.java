@@ -0,0 +1,87 @@
+package org.codespeak.distribution.client.handler.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A transport that uses the shared connection pool of HttpURLConnection.
+ * Connections are kept alive and reused once the body of a response has been
+ * read completely and closed
+ *
+ * @author Vector
+ */
+public class URLConnectionTransport implements Transport {
+
+    private static final int MAX_POOLED_CONNECTIONS = 16;
+
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    public URLConnectionTransport() {
+        this(0, 0);
+    }
+
+    /**
+     * Creates a transport with the specified timeouts
+     * @param connectTimeout time in milliseconds to wait for a connection, or
+     * 0 to wait forever
+     * @param readTimeout time in milliseconds to wait for data from an open
+     * connection, or 0 to wait forever
+     */
+    public URLConnectionTransport(int connectTimeout, int readTimeout) {
+        this.connectTimeout = Math.max(0, connectTimeout);
+        this.readTimeout = Math.max(0, readTimeout);
+    }
+
+    /**
+     * Sets up the shared connection pool of HttpURLConnection. The pool reads
+     * its settings once, when the first connection is made, so this must be
+     * called at the start of the program. Settings given on the command line
+     * are kept
+     */
+    public static void configureConnectionPool() {
+        if (System.getProperty("http.keepAlive") == null) {
+            System.setProperty("http.keepAlive", "true");
+        }
+
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(MAX_POOLED_CONNECTIONS));
+        }
+    }
+
+    @Override
+    public TransportResponse get(String url, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+
+        connection.setUseCaches(false);
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            connection.setRequestProperty(entry.getKey(), entry.getValue());
+        }
+
+        int statusCode = connection.getResponseCode();
+        Map<String, String> responseHeaders = new HashMap<String, String>();
+
+        for (Map.Entry<String, List<String>> entry : connection.getHeaderFields().entrySet()) {
+            List<String> values = entry.getValue();
+
+            if (entry.getKey() != null && values != null && !values.isEmpty()) {
+                responseHeaders.put(entry.getKey(), values.get(0));
+            }
+        }
+
+        // The error stream must be used for unsuccessful responses so the
+        // connection can still be returned to the pool once it is read
+        InputStream body = (statusCode >= 400 ? connection.getErrorStream() : connection.getInputStream());
+
+        return new TransportResponse(statusCode, responseHeaders, body);
+    }
+
+}
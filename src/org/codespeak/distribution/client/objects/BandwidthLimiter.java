@@ -0,0 +1,92 @@
+package org.codespeak.distribution.client.objects;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class that limits the rate at which bytes are transferred using a token
+ * bucket. The bucket holds up to one second of transfer, and every transfer
+ * takes its size from the bucket. A transfer that empties the bucket waits
+ * until the bucket would have refilled, so every thread sharing the limiter
+ * shares the same rate
+ *
+ * @author Vector
+ */
+public class BandwidthLimiter {
+
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    private long bytesPerSecond = 0;
+    private double tokens = 0;
+    private long lastRefillTime = System.nanoTime();
+
+    /**
+     * Creates a bandwidth limiter with the specified rate
+     * @param bytesPerSecond maximum number of bytes per second, or 0 for no
+     * limit
+     */
+    public BandwidthLimiter(long bytesPerSecond) {
+        setRate(bytesPerSecond);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+
+        tokens = Math.min(bytesPerSecond, tokens + ((now - lastRefillTime) * bytesPerSecond / NANOS_PER_SECOND));
+        lastRefillTime = now;
+    }
+
+    /**
+     * Sets the rate of this limiter
+     * @param bytesPerSecond maximum number of bytes per second, or 0 for no
+     * limit
+     */
+    public synchronized void setRate(long bytesPerSecond) {
+        if (bytesPerSecond == this.bytesPerSecond) {
+            return;
+        }
+
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        this.tokens = this.bytesPerSecond;
+        this.lastRefillTime = System.nanoTime();
+    }
+
+    /**
+     * Gets the rate of this limiter
+     * @return maximum number of bytes per second, or 0 for no limit
+     */
+    public synchronized long getRate() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Takes the specified number of bytes from this limiter, waiting if they
+     * are over the rate
+     * @param bytes number of bytes being transferred
+     * @throws InterruptedException thrown if the thread is interrupted while
+     * waiting
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        long waitNanos = 0;
+
+        synchronized (this) {
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+
+            refill();
+
+            // The bucket may go below zero. Later transfers then wait for the
+            // debt of the earlier ones as well
+            tokens -= bytes;
+
+            if (tokens < 0) {
+                waitNanos = (long) (-tokens * NANOS_PER_SECOND / bytesPerSecond);
+            }
+        }
+
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+}
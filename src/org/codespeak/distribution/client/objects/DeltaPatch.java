@@ -0,0 +1,149 @@
+package org.codespeak.distribution.client.objects;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A class that applies binary patches to files. A patch turns one version of
+ * a file into another with instructions that either copy a range of the old
+ * file or insert new bytes, so only the changed parts of a file have to be
+ * downloaded. The patch is read as it is applied, and the result is written
+ * straight to the target file.
+ * <p>
+ * A patch starts with the bytes "CSDP", a format version byte and the length
+ * of the patched file as a long. It is followed by instructions, each
+ * starting with a byte naming it:
+ * <ul>
+ * <li>COPY (1): a long offset into the old file and an int length</li>
+ * <li>INSERT (2): an int length followed by that many bytes</li>
+ * <li>END (0): the end of the patch</li>
+ * </ul>
+ * All numbers are big endian
+ *
+ * @author Vector
+ */
+public class DeltaPatch {
+
+    private static final byte[] MAGIC = {'C', 'S', 'D', 'P'};
+    private static final int FORMAT_VERSION = 1;
+    private static final int END = 0;
+    private static final int COPY = 1;
+    private static final int INSERT = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static void readHeader(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Data is not a patch.");
+            }
+        }
+
+        int version = in.readUnsignedByte();
+
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported patch version: " + version);
+        }
+    }
+
+    private static void copy(FileChannel sourceChannel, FileChannel targetChannel, long offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > sourceChannel.size()) {
+            throw new IOException("Patch copies outside of the original file.");
+        }
+
+        long copied = 0;
+
+        while (copied < length) {
+            long count = sourceChannel.transferTo(offset + copied, length - copied, targetChannel);
+
+            if (count <= 0) {
+                throw new EOFException("Original file ended during a copy.");
+            }
+
+            copied += count;
+        }
+    }
+
+    private static void insert(DataInputStream in, FileChannel targetChannel, int length, byte[] buffer) throws IOException {
+        if (length < 0) {
+            throw new IOException("Patch has an insert with a negative length.");
+        }
+
+        int remaining = length;
+
+        while (remaining > 0) {
+            int count = Math.min(remaining, buffer.length);
+            in.readFully(buffer, 0, count);
+
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, count);
+
+            while (byteBuffer.hasRemaining()) {
+                targetChannel.write(byteBuffer);
+            }
+
+            remaining -= count;
+        }
+    }
+
+    /**
+     * Applies a patch to a file, writing the result to another file
+     * @param sourcePath path of the file being patched
+     * @param patch stream containing the patch
+     * @param targetPath path the patched file is written to. It is replaced
+     * if it exists
+     * @throws IOException thrown if the patch is malformed or a file cannot
+     * be read or written
+     */
+    public static void apply(Path sourcePath, InputStream patch, Path targetPath) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(patch, BUFFER_SIZE));
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        readHeader(in);
+
+        long targetLength = in.readLong();
+
+        try (FileChannel sourceChannel = FileChannel.open(sourcePath, StandardOpenOption.READ);
+             FileChannel targetChannel = FileChannel.open(targetPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                          StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (true) {
+                int instruction = in.readUnsignedByte();
+
+                if (instruction == END) {
+                    break;
+                }
+
+                switch (instruction) {
+                    case COPY:
+                        long offset = in.readLong();
+                        copy(sourceChannel, targetChannel, offset, in.readInt());
+
+                        break;
+                    case INSERT:
+                        insert(in, targetChannel, in.readInt(), buffer);
+
+                        break;
+                    default:
+                        throw new IOException("Unknown patch instruction: " + instruction);
+                }
+
+                if (targetChannel.position() > targetLength) {
+                    throw new IOException("Patched file is longer than expected.");
+                }
+            }
+
+            if (targetChannel.position() != targetLength) {
+                throw new IOException("Patched file is shorter than expected.");
+            }
+        }
+    }
+
+}
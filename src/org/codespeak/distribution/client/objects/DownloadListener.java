@@ -0,0 +1,19 @@
+package org.codespeak.distribution.client.objects;
+
+/**
+ * An interface used to receive progress from a file download
+ *
+ * @author Vector
+ */
+public interface DownloadListener {
+
+    /**
+     * Called whenever progress is made on a download. This may be called
+     * from any of the download worker threads
+     * @param bytesDownloaded total bytes downloaded so far
+     * @param filesCompleted number of files that have finished downloading
+     * @param totalFiles number of files being downloaded
+     */
+    public void onProgress(long bytesDownloaded, int filesCompleted, int totalFiles);
+
+}
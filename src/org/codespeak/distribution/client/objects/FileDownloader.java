@@ -0,0 +1,491 @@
+package org.codespeak.distribution.client.objects;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.codespeak.distribution.client.Configuration;
+import org.codespeak.distribution.client.Settings.SettingFields;
+import org.codespeak.distribution.client.data.FileInfo;
+import org.codespeak.distribution.client.handler.BackendHandler;
+import org.codespeak.distribution.client.handler.BlobStore;
+import org.codespeak.distribution.client.handler.transport.TransportResponse;
+import org.codespeak.distribution.client.util.MiscUtil;
+import org.codespeak.distribution.client.util.StringUtil;
+
+/**
+ * A class that downloads the files of a program using a bounded number of
+ * worker threads. Each file is downloaded into the staging folder first, where
+ * an interrupted download is resumed with a range request. A file that has an
+ * installed version is patched from that version when the backend has a
+ * patch, and downloaded in full otherwise. The file is only moved into place
+ * once it matches its checksum. Files already in the blob store are taken from
+ * there instead of being downloaded, and downloaded files are added to it
+ *
+ * @author Vector
+ */
+public class FileDownloader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+    private static final String PARTS_FOLDER = "parts";
+    private static final String PART_EXTENSION = ".part";
+    private static final String PATCHED_EXTENSION = ".patched";
+
+    // Shared by every download so the speed limit applies to the client as a
+    // whole
+    private static final BandwidthLimiter bandwidthLimiter = new BandwidthLimiter(0);
+
+    private final String slug;
+    private final int workers;
+    private final List<FileInfo> pendingFiles = new ArrayList<FileInfo>();
+    private final List<Path> pendingPaths = new ArrayList<Path>();
+    private final List<Path> pendingBasePaths = new ArrayList<Path>();
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private final AtomicInteger filesCompleted = new AtomicInteger();
+    private final AtomicInteger totalFiles = new AtomicInteger();
+    private DownloadListener listener = null;
+    private ExecutorService executor = null;
+    private CompletionService<Void> completionService = null;
+
+    /**
+     * An input stream that counts the bytes read through it as downloaded
+     * and keeps them within the speed limit
+     */
+    private class MeteredInputStream extends FilterInputStream {
+
+        private long count = 0;
+
+        private MeteredInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+
+            if (b != -1) {
+                onBytesRead(1);
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+
+            if (count > 0) {
+                onBytesRead(count);
+            }
+
+            return count;
+        }
+
+        private void onBytesRead(int count) throws InterruptedIOException {
+            throttle(count);
+            this.count += count;
+            bytesDownloaded.addAndGet(count);
+            notifyProgress();
+        }
+
+        private long getCount() {
+            return count;
+        }
+
+    }
+
+    private static void throttle(int bytes) throws InterruptedIOException {
+        try {
+            bandwidthLimiter.acquire(bytes);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Download was interrupted.");
+        }
+    }
+
+    private void discardBytes(long count) {
+        // Bytes of a download that is thrown away are taken back out of the
+        // progress, as they are downloaded again
+        if (count > 0) {
+            bytesDownloaded.addAndGet(-count);
+            notifyProgress();
+        }
+    }
+
+    private void notifyProgress() {
+        if (listener != null) {
+            listener.onProgress(bytesDownloaded.get(), filesCompleted.get(), totalFiles.get());
+        }
+    }
+
+    private void submitFile(FileInfo file, Path localPath, Path basePath) {
+        completionService.submit(() -> {
+            if (BlobStore.materialize(slug, file.getChecksum(), localPath)) {
+                onFileCompleted();
+            } else if (basePath == null || !patchFile(file, basePath, localPath)) {
+                downloadFile(file, localPath);
+            }
+
+            return null;
+        });
+    }
+
+    private Path getStagingPath(FileInfo file, String extension) {
+        return Paths.get(Configuration.STAGING_FOLDER, slug, PARTS_FOLDER, file.getPathAndName() + extension);
+    }
+
+    private void transferToPart(FileInfo file, Path partPath, AtomicLong partBytes) throws IOException, ClientException {
+        File partFile = partPath.toFile();
+        long offset = (partFile.exists() ? partFile.length() : 0);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        try (TransportResponse response = BackendHandler.getRemoteFileResponse(slug, file.getRemotePathAndName(), file.getChecksum(), offset);
+             ReadableByteChannel inChannel = Channels.newChannel(response.getBody());
+             FileChannel outChannel = new FileOutputStream(partFile, response.getStatusCode() == HTTP_PARTIAL_CONTENT).getChannel()) {
+            // A response with the whole file replaces the part file
+            if (response.getStatusCode() != HTTP_PARTIAL_CONTENT) {
+                discardBytes(partBytes.getAndSet(0));
+            }
+
+            while (inChannel.read(buffer) != -1) {
+                buffer.flip();
+                throttle(buffer.remaining());
+
+                while (buffer.hasRemaining()) {
+                    int count = outChannel.write(buffer);
+
+                    bytesDownloaded.addAndGet(count);
+                    partBytes.addAndGet(count);
+                }
+
+                buffer.clear();
+                notifyProgress();
+            }
+        }
+    }
+
+    private void onFileCompleted() {
+        filesCompleted.incrementAndGet();
+        notifyProgress();
+    }
+
+    private void moveIntoPlace(FileInfo file, Path stagedPath, Path localPath) throws IOException {
+        String checksum = file.getChecksum();
+
+        if (!StringUtil.isNullOrEmpty(checksum)) {
+            BlobStore.put(slug, stagedPath, checksum, localPath);
+        } else {
+            Path parentPath = localPath.getParent();
+
+            if (parentPath != null) {
+                MiscUtil.ensurePathExists(parentPath);
+            }
+
+            Files.move(stagedPath, localPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        onFileCompleted();
+    }
+
+    private boolean patchFile(FileInfo file, Path basePath, Path localPath) throws IOException {
+        String checksum = file.getChecksum();
+
+        if (StringUtil.isNullOrEmpty(checksum) || !basePath.toFile().isFile()) {
+            return false;
+        }
+
+        String baseChecksum = MiscUtil.getFileChecksum(basePath);
+
+        if (baseChecksum == null) {
+            return false;
+        }
+
+        Path patchedPath = getStagingPath(file, PATCHED_EXTENSION);
+        MeteredInputStream patchStream = null;
+
+        MiscUtil.ensurePathExists(patchedPath.getParent());
+
+        try {
+            if (baseChecksum.equalsIgnoreCase(checksum)) {
+                Files.copy(basePath, patchedPath, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                try (TransportResponse response = BackendHandler.getRemotePatchResponse(slug, baseChecksum, checksum)) {
+                    if (response == null) {
+                        return false;
+                    }
+
+                    patchStream = new MeteredInputStream(response.getBody());
+                    DeltaPatch.apply(basePath, patchStream, patchedPath);
+                }
+            }
+        } catch (IOException | ClientException ex) {
+            Files.deleteIfExists(patchedPath);
+
+            if (patchStream != null) {
+                discardBytes(patchStream.getCount());
+            }
+
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Download was interrupted.");
+            }
+
+            // A patch that cannot be fetched or applied falls back to
+            // downloading the whole file
+            return false;
+        }
+
+        if (!checksum.equalsIgnoreCase(MiscUtil.getFileChecksum(patchedPath))) {
+            Files.deleteIfExists(patchedPath);
+
+            if (patchStream != null) {
+                discardBytes(patchStream.getCount());
+            }
+
+            return false;
+        }
+
+        moveIntoPlace(file, patchedPath, localPath);
+
+        return true;
+    }
+
+    private void downloadFile(FileInfo file, Path localPath) throws IOException, ClientException {
+        Path partPath = getStagingPath(file, PART_EXTENSION);
+        String checksum = file.getChecksum();
+        AtomicLong partBytes = new AtomicLong();
+        boolean restarted = false;
+        int attempt = 1;
+
+        MiscUtil.ensurePathExists(partPath.getParent());
+
+        while (true) {
+            try {
+                transferToPart(file, partPath, partBytes);
+            } catch (IOException | ClientException ex) {
+                // The part file is kept so the next attempt resumes from
+                // where this one stopped
+                if (attempt >= MAX_ATTEMPTS || Thread.currentThread().isInterrupted()) {
+                    throw ex;
+                }
+
+                attempt++;
+
+                continue;
+            }
+
+            if (StringUtil.isNullOrEmpty(checksum) || checksum.equalsIgnoreCase(MiscUtil.getFileChecksum(partPath))) {
+                break;
+            }
+
+            // A part file left over from an older version of the file can
+            // resume into a corrupt file, so it is downloaded once more from
+            // the beginning before giving up
+            Files.deleteIfExists(partPath);
+            discardBytes(partBytes.getAndSet(0));
+
+            if (restarted) {
+                throw new IOException("Checksum mismatch for downloaded file: " + file.getRemotePathAndName());
+            }
+
+            restarted = true;
+        }
+
+        moveIntoPlace(file, partPath, localPath);
+    }
+
+    private void removeEmptyStagingFolders() throws IOException {
+        Path stagingPath = Paths.get(Configuration.STAGING_FOLDER, slug);
+        Path partsPath = stagingPath.resolve(PARTS_FOLDER);
+
+        if (!partsPath.toFile().exists()) {
+            return;
+        }
+
+        // Folders are visited deepest first, and only empty ones are deleted
+        try (Stream<Path> paths = Files.walk(partsPath)) {
+            paths.sorted(Comparator.reverseOrder())
+                 .map(Path::toFile)
+                 .filter(File::isDirectory)
+                 .forEach(File::delete);
+        }
+
+        stagingPath.toFile().delete();
+    }
+
+    /**
+     * Creates a file downloader for the specified program using the number of
+     * workers from the settings
+     * @param slug slug of the program being downloaded
+     */
+    public FileDownloader(String slug) {
+        this(slug, Configuration.getSettings().<Integer>getValue(SettingFields.DOWNLOAD_THREADS));
+    }
+
+    /**
+     * Creates a file downloader for the specified program
+     * @param slug slug of the program being downloaded
+     * @param workers maximum number of files to download at the same time
+     */
+    public FileDownloader(String slug, int workers) {
+        this.slug = slug;
+        this.workers = Math.max(1, workers);
+
+        int speedLimit = Configuration.getSettings().getValue(SettingFields.DOWNLOAD_SPEED_LIMIT);
+        bandwidthLimiter.setRate(speedLimit * 1024L);
+    }
+
+    /**
+     * Sets the listener that receives the progress of this download
+     * @param listener listener that receives progress, or null for none
+     */
+    public void setListener(DownloadListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a file to be downloaded. If the downloader has been started, the
+     * file is downloaded right away. This method may be called from any thread
+     * @param file the remote file to download
+     * @param localPath path the file will be written to
+     */
+    public void addFile(FileInfo file, Path localPath) {
+        addFile(file, localPath, null);
+    }
+
+    /**
+     * Adds a file to be downloaded, patching it from its installed version
+     * when possible. If the downloader has been started, the file is
+     * downloaded right away. This method may be called from any thread
+     * @param file the remote file to download
+     * @param localPath path the file will be written to
+     * @param basePath path of the installed version of the file, or null to
+     * always download the whole file
+     */
+    public synchronized void addFile(FileInfo file, Path localPath, Path basePath) {
+        totalFiles.incrementAndGet();
+
+        if (executor != null) {
+            submitFile(file, localPath, basePath);
+        } else {
+            pendingFiles.add(file);
+            pendingPaths.add(localPath);
+            pendingBasePaths.add(basePath);
+        }
+    }
+
+    /**
+     * Gets the number of files to be downloaded
+     * @return number of files to be downloaded
+     */
+    public int getFileCount() {
+        return totalFiles.get();
+    }
+
+    /**
+     * Starts downloading the files added so far. Files added after this are
+     * downloaded as soon as a worker is free
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+
+        executor = Executors.newFixedThreadPool(workers);
+        completionService = new ExecutorCompletionService<Void>(executor);
+
+        for (int i = 0; i < pendingFiles.size(); i++) {
+            submitFile(pendingFiles.get(i), pendingPaths.get(i), pendingBasePaths.get(i));
+        }
+
+        pendingFiles.clear();
+        pendingPaths.clear();
+        pendingBasePaths.clear();
+    }
+
+    /**
+     * Waits for every added file to finish downloading. No more files may be
+     * added once this is called. If any file fails to download, the remaining
+     * downloads are cancelled and the error is thrown
+     * @throws IOException thrown if an error occurs while writing a file
+     * @throws ClientException thrown if an error occurs while fetching a
+     * remote file
+     */
+    public void await() throws IOException, ClientException {
+        start();
+
+        try {
+            for (int i = 0; i < totalFiles.get(); i++) {
+                completionService.take().get();
+            }
+
+            removeEmptyStagingFolders();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+
+            throw new IOException("Download was interrupted.", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+
+            if (cause instanceof ClientException) {
+                throw (ClientException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw ClientException.fromException((Exception) cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Cancels every download that has not finished yet
+     */
+    public synchronized void cancel() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Downloads all added files. If any file fails to download, the remaining
+     * downloads are cancelled and the error is thrown
+     * @throws IOException thrown if an error occurs while writing a file
+     * @throws ClientException thrown if an error occurs while fetching a
+     * remote file
+     */
+    public void download() throws IOException, ClientException {
+        if (totalFiles.get() == 0) {
+            return;
+        }
+
+        await();
+    }
+
+}
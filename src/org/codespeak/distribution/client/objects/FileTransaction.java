@@ -0,0 +1,268 @@
+package org.codespeak.distribution.client.objects;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import org.codespeak.distribution.client.Configuration;
+import org.codespeak.distribution.client.data.FileInfo;
+import org.codespeak.distribution.client.util.MiscUtil;
+
+/**
+ * A class that applies changes to the files of a program all at once. New
+ * files are downloaded into a staging directory and are only moved into the
+ * program directory when the transaction is committed. Every move is written
+ * to a journal before it is made, so a commit that fails or is interrupted is
+ * rolled back, even after a restart
+ *
+ * @author Vector
+ */
+public class FileTransaction {
+
+    private static final Logger LOGGER = Logger.getLogger(FileTransaction.class.getName());
+
+    private static final String TRANSACTION_FOLDER = "transaction";
+    private static final String FILES_FOLDER = "files";
+    private static final String ROLLBACK_FOLDER = "rollback";
+    private static final String JOURNAL_FILE = "transaction.journal";
+
+    private static final String TARGET_ENTRY = "target ";
+    private static final String BACKUP_ENTRY = "backup ";
+    private static final String PLACE_ENTRY = "place ";
+    private static final String COMMIT_ENTRY = "commit";
+
+    private final Path targetDirectory;
+    private final Path transactionDirectory;
+    private final Path filesDirectory;
+    private final Path rollbackDirectory;
+    private final List<String> replacedFiles = new ArrayList<String>();
+    private final List<String> removedFiles = new ArrayList<String>();
+
+    /**
+     * Creates a transaction for the files of the specified program
+     * @param slug slug of the program
+     * @param targetDirectory directory of the program
+     */
+    public FileTransaction(String slug, Path targetDirectory) {
+        this.targetDirectory = targetDirectory;
+        this.transactionDirectory = Paths.get(Configuration.STAGING_FOLDER, slug, TRANSACTION_FOLDER);
+        this.filesDirectory = transactionDirectory.resolve(FILES_FOLDER);
+        this.rollbackDirectory = transactionDirectory.resolve(ROLLBACK_FOLDER);
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        if (!directory.toFile().exists()) {
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder())
+                 .map(Path::toFile)
+                 .forEach(File::delete);
+        }
+    }
+
+    private static void moveFile(Path source, Path destination) throws IOException {
+        Path parentPath = destination.getParent();
+
+        if (parentPath != null) {
+            MiscUtil.ensurePathExists(parentPath);
+        }
+
+        Files.move(source, destination, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeEntry(FileOutputStream journal, String entry) throws IOException {
+        journal.write((entry + "\n").getBytes(StandardCharsets.UTF_8));
+        journal.getFD().sync();
+    }
+
+    private static void recover(Path transactionDirectory) throws IOException {
+        Path journalPath = transactionDirectory.resolve(JOURNAL_FILE);
+
+        if (journalPath.toFile().exists()) {
+            List<String> entries = Files.readAllLines(journalPath, StandardCharsets.UTF_8);
+            boolean committed = entries.contains(COMMIT_ENTRY);
+
+            if (!committed && !entries.isEmpty() && entries.get(0).startsWith(TARGET_ENTRY)) {
+                Path targetDirectory = Paths.get(entries.get(0).substring(TARGET_ENTRY.length()));
+                Path rollbackDirectory = transactionDirectory.resolve(ROLLBACK_FOLDER);
+
+                // Entries are undone newest first. An entry is written before
+                // its move is made, so the move may not have happened yet
+                for (int i = entries.size() - 1; i > 0; i--) {
+                    String entry = entries.get(i);
+
+                    if (entry.startsWith(PLACE_ENTRY)) {
+                        Files.deleteIfExists(targetDirectory.resolve(entry.substring(PLACE_ENTRY.length())));
+                    } else if (entry.startsWith(BACKUP_ENTRY)) {
+                        String relativePath = entry.substring(BACKUP_ENTRY.length());
+                        Path backupPath = rollbackDirectory.resolve(relativePath);
+
+                        if (backupPath.toFile().exists()) {
+                            moveFile(backupPath, targetDirectory.resolve(relativePath));
+                        }
+                    }
+                }
+
+                LOGGER.warning("Rolled back unfinished changes to " + targetDirectory);
+            }
+        }
+
+        deleteDirectory(transactionDirectory);
+    }
+
+    /**
+     * Recovers every transaction that was interrupted before it finished. A
+     * transaction that did not reach its commit is rolled back, and staged
+     * files left behind by any transaction are removed
+     */
+    public static void recoverAll() {
+        File[] programFolders = new File(Configuration.STAGING_FOLDER).listFiles(File::isDirectory);
+
+        if (programFolders == null) {
+            return;
+        }
+
+        for (File programFolder : programFolders) {
+            Path transactionDirectory = programFolder.toPath().resolve(TRANSACTION_FOLDER);
+
+            if (!transactionDirectory.toFile().exists()) {
+                continue;
+            }
+
+            try {
+                recover(transactionDirectory);
+            } catch (IOException ex) {
+                LOGGER.severe("Unable to recover " + transactionDirectory + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Begins this transaction, recovering any earlier transaction of the same
+     * program that did not finish
+     * @throws IOException thrown if the earlier transaction could not be
+     * recovered
+     */
+    public void begin() throws IOException {
+        recover(transactionDirectory);
+
+        MiscUtil.ensurePathExists(filesDirectory);
+    }
+
+    /**
+     * Gets the path the new version of the specified file is downloaded to
+     * before this transaction is committed
+     * @param file the file being replaced
+     * @return staged path of the file
+     */
+    public Path getStagedPath(FileInfo file) {
+        return filesDirectory.resolve(file.getPathAndName());
+    }
+
+    /**
+     * Adds a file that is replaced by its staged version when this
+     * transaction is committed
+     * @param file the file being replaced
+     */
+    public void replaceFile(FileInfo file) {
+        replacedFiles.add(file.getPathAndName());
+    }
+
+    /**
+     * Adds a file that is removed when this transaction is committed
+     * @param file the file being removed
+     */
+    public void removeFile(FileInfo file) {
+        removedFiles.add(file.getPathAndName());
+    }
+
+    /**
+     * Moves every staged file into the program directory and removes every
+     * removed file. If the program directory does not exist yet, the staged
+     * directory is renamed to it instead. If any move fails, the moves made
+     * so far are undone before the error is thrown
+     * @throws IOException thrown if the changes could not be applied
+     */
+    public void commit() throws IOException {
+        if (!targetDirectory.toFile().exists()) {
+            Path parentPath = targetDirectory.toAbsolutePath().getParent();
+
+            if (parentPath != null) {
+                MiscUtil.ensurePathExists(parentPath);
+            }
+
+            try {
+                Files.move(filesDirectory, targetDirectory, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(filesDirectory, targetDirectory);
+            }
+
+            deleteDirectory(transactionDirectory);
+
+            return;
+        }
+
+        Path journalPath = transactionDirectory.resolve(JOURNAL_FILE);
+
+        try (FileOutputStream journal = new FileOutputStream(journalPath.toFile())) {
+            writeEntry(journal, TARGET_ENTRY + targetDirectory.toAbsolutePath());
+
+            for (String relativePath : removedFiles) {
+                Path targetPath = targetDirectory.resolve(relativePath);
+
+                if (targetPath.toFile().exists()) {
+                    writeEntry(journal, BACKUP_ENTRY + relativePath);
+                    moveFile(targetPath, rollbackDirectory.resolve(relativePath));
+                }
+            }
+
+            for (String relativePath : replacedFiles) {
+                Path targetPath = targetDirectory.resolve(relativePath);
+
+                if (targetPath.toFile().exists()) {
+                    writeEntry(journal, BACKUP_ENTRY + relativePath);
+                    moveFile(targetPath, rollbackDirectory.resolve(relativePath));
+                }
+
+                writeEntry(journal, PLACE_ENTRY + relativePath);
+                moveFile(filesDirectory.resolve(relativePath), targetPath);
+            }
+
+            writeEntry(journal, COMMIT_ENTRY);
+        } catch (IOException ex) {
+            try {
+                recover(transactionDirectory);
+            } catch (IOException rollbackEx) {
+                ex.addSuppressed(rollbackEx);
+            }
+
+            throw ex;
+        }
+
+        deleteDirectory(transactionDirectory);
+    }
+
+    /**
+     * Abandons this transaction, leaving the program directory untouched
+     */
+    public void abort() {
+        try {
+            deleteDirectory(transactionDirectory);
+        } catch (IOException ex) {
+            LOGGER.warning("Unable to remove staged files in " + transactionDirectory + ": " + ex.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package org.codespeak.distribution.client.objects;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import org.codespeak.distribution.client.data.FileInfo;
+import org.codespeak.distribution.client.util.MiscUtil;
+
+/**
+ * A class that verifies the local files of a program against their remote
+ * checksums, hashing several files at the same time
+ *
+ * @author Vector
+ */
+public class FileVerifier {
+
+    private final Path directory;
+    private final int workers;
+    private VerificationCache cache = null;
+    private boolean deepVerify = false;
+
+    /**
+     * Creates a file verifier using one worker per available processor
+     * @param directory directory the files are verified in
+     */
+    public FileVerifier(Path directory) {
+        this(directory, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a file verifier
+     * @param directory directory the files are verified in
+     * @param workers maximum number of files to hash at the same time
+     */
+    public FileVerifier(Path directory, int workers) {
+        this.directory = directory;
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Sets the cache used to skip hashing files that have not changed since
+     * they were last verified
+     * @param cache verification cache to use, or null for none
+     */
+    public void setCache(VerificationCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets whether every file is hashed even if the cache shows it has not
+     * changed. The cache is still updated with the new checksums
+     * @param deepVerify whether every file is hashed
+     */
+    public void setDeepVerify(boolean deepVerify) {
+        this.deepVerify = deepVerify;
+    }
+
+    /**
+     * Checks if the local copy of the specified file matches its checksum
+     * @param file the file to check
+     * @return if the local copy of the file exists and matches its checksum
+     */
+    public boolean isValid(FileInfo file) {
+        Path localPath = directory.resolve(file.getPathAndName());
+
+        if (!localPath.toFile().exists()) {
+            return false;
+        }
+
+        String localChecksum = null;
+
+        if (cache != null && !deepVerify) {
+            localChecksum = cache.getKnownChecksum(file, localPath);
+        }
+
+        if (localChecksum == null) {
+            localChecksum = MiscUtil.getFileChecksum(localPath);
+
+            if (cache != null) {
+                cache.record(file, localPath, localChecksum);
+            }
+        }
+
+        return file.getChecksum().equalsIgnoreCase(localChecksum);
+    }
+
+    /**
+     * Verifies the specified files. The handler is called as soon as a file
+     * is found to be missing or different, from one of the worker threads
+     * @param files the files to verify
+     * @param mismatchHandler handler called for each file that needs to be
+     * downloaded again, or null for none
+     * @return list of files that are missing or do not match their checksum
+     * @throws IOException thrown if verification was interrupted or failed
+     */
+    public List<FileInfo> verify(List<FileInfo> files, Consumer<FileInfo> mismatchHandler) throws IOException {
+        List<FileInfo> mismatchedFiles = Collections.synchronizedList(new ArrayList<FileInfo>());
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, Math.max(1, files.size())));
+
+        try {
+            for (FileInfo file : files) {
+                futures.add(executor.submit(() -> {
+                    if (!isValid(file)) {
+                        mismatchedFiles.add(file);
+
+                        if (mismatchHandler != null) {
+                            mismatchHandler.accept(file);
+                        }
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+
+            throw new IOException("Verification was interrupted.", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("Unable to verify program files.", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return mismatchedFiles;
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.codespeak.distribution.client.objects;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import org.codespeak.distribution.client.Configuration;
+
+/**
+ * A class that makes sure only one instance of the client works in its folder
+ * at a time. Each instance recovers unfinished transactions when it starts and
+ * writes its own view of the data to the data file, so two instances running
+ * at once would undo each other's changes. The lock is released by the
+ * operating system if the client exits without releasing it
+ *
+ * @author Vector
+ */
+public class InstanceLock {
+
+    private static FileChannel channel = null;
+    private static FileLock lock = null;
+
+    /**
+     * Takes the lock of the client folder
+     * @return if the lock was taken, or false if another instance of the
+     * client holds it
+     * @throws IOException thrown if the lock file could not be opened
+     */
+    public static synchronized boolean acquire() throws IOException {
+        if (lock != null) {
+            return true;
+        }
+
+        FileChannel lockChannel = FileChannel.open(Paths.get(Configuration.LOCK_FILE),
+                                                   StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock fileLock = null;
+
+        try {
+            fileLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            fileLock = null;
+        } catch (IOException ex) {
+            lockChannel.close();
+
+            throw ex;
+        }
+
+        if (fileLock == null) {
+            lockChannel.close();
+
+            return false;
+        }
+
+        channel = lockChannel;
+        lock = fileLock;
+
+        return true;
+    }
+
+    /**
+     * Releases the lock of the client folder if it is held
+     */
+    public static synchronized void release() {
+        if (lock == null) {
+            return;
+        }
+
+        try {
+            lock.release();
+            channel.close();
+        } catch (IOException ex) {
+
+        }
+
+        lock = null;
+        channel = null;
+    }
+
+}
@@ -0,0 +1,106 @@
+package org.codespeak.distribution.client.objects;
+
+import javafx.concurrent.Task;
+
+/**
+ * A class representing an operation on a program that runs in the background.
+ * The files of the program are changed by the job itself, and the finishing
+ * step, which changes the data of the client and the user interface, is run
+ * on the JavaFX application thread once the job has succeeded
+ *
+ * @author Vector
+ */
+public class Job extends Task<Void> {
+
+    /**
+     * An interface for the part of a job that runs in the background
+     */
+    public interface Work {
+
+        /**
+         * Runs the work of the job
+         * @param listener listener receiving download progress
+         * @throws Exception thrown if the work fails
+         */
+        void run(DownloadListener listener) throws Exception;
+
+    }
+
+    /**
+     * An interface for the part of a job that runs on the JavaFX application
+     * thread after the work has succeeded
+     */
+    public interface Completion {
+
+        /**
+         * Finishes the job
+         * @throws Exception thrown if the job could not be finished
+         */
+        void run() throws Exception;
+
+    }
+
+    private static final String[] SIZE_UNITS = {"B", "KB", "MB", "GB"};
+
+    private final int programId;
+    private final Work work;
+    private final Completion completion;
+
+    public Job(String title, int programId, Work work, Completion completion) {
+        this.programId = programId;
+        this.work = work;
+        this.completion = completion;
+
+        updateTitle(title);
+        updateMessage("Queued");
+    }
+
+    private static String formatSize(long bytes) {
+        double size = bytes;
+        int unit = 0;
+
+        while (size >= 1024 && unit < SIZE_UNITS.length - 1) {
+            size /= 1024;
+            unit++;
+        }
+
+        return (unit == 0 ? bytes + " B" : String.format("%.1f %s", size, SIZE_UNITS[unit]));
+    }
+
+    private void onProgress(long bytesDownloaded, int filesCompleted, int totalFiles) {
+        if (totalFiles > 0) {
+            updateProgress(filesCompleted, totalFiles);
+        }
+
+        updateMessage(filesCompleted + " of " + totalFiles + " files, " + formatSize(bytesDownloaded));
+    }
+
+    @Override
+    protected Void call() throws Exception {
+        updateMessage("Running");
+
+        work.run(this::onProgress);
+
+        updateProgress(1, 1);
+        updateMessage("Finishing");
+
+        return null;
+    }
+
+    /**
+     * Gets the ID of the program this job operates on
+     * @return ID of the program this job operates on
+     */
+    public int getProgramId() {
+        return programId;
+    }
+
+    /**
+     * Gets the step that finishes this job on the JavaFX application thread
+     * @return step that finishes this job
+     */
+    public Completion getCompletion() {
+        return completion;
+    }
+
+}
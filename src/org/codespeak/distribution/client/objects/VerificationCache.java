@@ -0,0 +1,159 @@
+package org.codespeak.distribution.client.objects;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.codespeak.distribution.client.Configuration;
+import org.codespeak.distribution.client.data.FileInfo;
+import org.codespeak.distribution.client.util.MiscUtil;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A class that remembers the size, last modified time and checksum of each
+ * verified file of a program. A file whose size and last modified time have
+ * not changed since it was verified does not need to be hashed again
+ *
+ * @author Vector
+ */
+public class VerificationCache {
+
+    private static class Record {
+
+        private final long size;
+        private final long lastModified;
+        private final String checksum;
+
+        private Record(long size, long lastModified, String checksum) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+
+    }
+
+    private final String slug;
+    private final Map<String, Record> records = new ConcurrentHashMap<String, Record>();
+
+    private VerificationCache(String slug) {
+        this.slug = slug;
+    }
+
+    private static File getCacheFile(String slug) {
+        return Paths.get(Configuration.CACHE_FOLDER, "verification", slug + ".json").toFile();
+    }
+
+    /**
+     * Gets the checksum a file had when it was last verified, if the file has
+     * not changed since then
+     * @param file the file to look up
+     * @param localPath path to the local copy of the file
+     * @return the last known checksum of the file, or null if the file is not
+     * known or has changed
+     */
+    public String getKnownChecksum(FileInfo file, Path localPath) {
+        Record record = records.get(file.getRemotePathAndName());
+
+        if (record == null) {
+            return null;
+        }
+
+        File localFile = localPath.toFile();
+
+        if (localFile.length() != record.size || localFile.lastModified() != record.lastModified) {
+            return null;
+        }
+
+        return record.checksum;
+    }
+
+    /**
+     * Records the checksum of a local file
+     * @param file the file being recorded
+     * @param localPath path to the local copy of the file
+     * @param checksum checksum of the local copy of the file
+     */
+    public void record(FileInfo file, Path localPath, String checksum) {
+        File localFile = localPath.toFile();
+
+        if (checksum == null || !localFile.exists()) {
+            records.remove(file.getRemotePathAndName());
+
+            return;
+        }
+
+        records.put(file.getRemotePathAndName(), new Record(localFile.length(), localFile.lastModified(), checksum));
+    }
+
+    /**
+     * Saves this cache to file
+     */
+    public void save() {
+        File cacheFile = getCacheFile(slug);
+        JSONObject json = new JSONObject();
+
+        MiscUtil.ensurePathExists(cacheFile.getParentFile().toPath());
+
+        for (Map.Entry<String, Record> entry : records.entrySet()) {
+            Record record = entry.getValue();
+            JSONObject obj = new JSONObject();
+
+            obj.put("size", record.size);
+            obj.put("last_modified", record.lastModified);
+            obj.put("checksum", record.checksum);
+
+            json.put(entry.getKey(), obj);
+        }
+
+        try (PrintWriter writer = new PrintWriter(new FileOutputStream(cacheFile))) {
+            writer.write(json.toString());
+        } catch (IOException ex) {
+
+        }
+    }
+
+    /**
+     * Loads the verification cache of the specified program. An empty cache
+     * is returned if none has been saved
+     * @param slug slug of the program
+     * @return verification cache of the program
+     */
+    public static VerificationCache load(String slug) {
+        VerificationCache cache = new VerificationCache(slug);
+        File cacheFile = getCacheFile(slug);
+
+        if (!cacheFile.exists()) {
+            return cache;
+        }
+
+        try {
+            byte[] bytes = Files.readAllBytes(cacheFile.toPath());
+            JSONObject json = new JSONObject(new String(bytes));
+
+            for (String key : json.keySet()) {
+                JSONObject obj = json.getJSONObject(key);
+
+                cache.records.put(key, new Record(obj.getLong("size"), obj.getLong("last_modified"), obj.getString("checksum")));
+            }
+        } catch (IOException | JSONException ex) {
+            cache.records.clear();
+        }
+
+        return cache;
+    }
+
+    /**
+     * Deletes the verification cache of the specified program
+     * @param slug slug of the program
+     */
+    public static void delete(String slug) {
+        getCacheFile(slug).delete();
+    }
+
+}
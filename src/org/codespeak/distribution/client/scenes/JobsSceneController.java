@@ -0,0 +1,72 @@
+package org.codespeak.distribution.client.scenes;
+
+import java.net.URL;
+import java.util.ResourceBundle;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Worker;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.Node;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.ProgressBarTableCell;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.stage.Stage;
+import org.codespeak.distribution.client.handler.JobHandler;
+import org.codespeak.distribution.client.objects.Job;
+
+/**
+ * Controller for the jobs scene
+ *
+ * @author Vector
+ */
+public class JobsSceneController implements Initializable {
+
+    @FXML private TableView<Job> jobsTable;
+    @FXML private TableColumn<Job, String> jobsTableTitleColumn;
+    @FXML private TableColumn<Job, Worker.State> jobsTableStateColumn;
+    @FXML private TableColumn<Job, Double> jobsTableProgressColumn;
+    @FXML private TableColumn<Job, String> jobsTableMessageColumn;
+
+    @Override
+    public void initialize(URL url, ResourceBundle rb) {
+        jobsTable.setEditable(false);
+
+        jobsTableTitleColumn.setCellValueFactory(new PropertyValueFactory<Job, String>("title"));
+        jobsTableStateColumn.setCellValueFactory(new PropertyValueFactory<Job, Worker.State>("state"));
+        jobsTableProgressColumn.setCellValueFactory(new PropertyValueFactory<Job, Double>("progress"));
+        jobsTableProgressColumn.setCellFactory(ProgressBarTableCell.<Job>forTableColumn());
+        jobsTableMessageColumn.setCellValueFactory(new PropertyValueFactory<Job, String>("message"));
+    }
+
+    /**
+     * Called when the jobs are being displayed. The list is updated as jobs
+     * are submitted and finish
+     * @param jobs list of jobs to display
+     */
+    public void showJobs(ObservableList<Job> jobs) {
+        jobsTable.setItems(jobs);
+    }
+
+    @FXML
+    public void onCancelJobButtonClick(ActionEvent event) {
+        Job job = jobsTable.getSelectionModel().getSelectedItem();
+
+        if (job != null) {
+            job.cancel();
+        }
+    }
+
+    @FXML
+    public void onClearFinishedButtonClick(ActionEvent event) {
+        JobHandler.clearFinishedJobs();
+    }
+
+    @FXML
+    public void onCloseButtonClick(ActionEvent event) {
+        Stage stage = (Stage) ((Node) event.getSource()).getScene().getWindow();
+        stage.close();
+    }
+
+}
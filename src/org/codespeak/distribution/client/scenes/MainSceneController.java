@@ -7,10 +7,15 @@ import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -26,6 +31,7 @@ import javafx.scene.control.SingleSelectionModel;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TableView.TableViewSelectionModel;
+import javafx.scene.control.TextArea;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
@@ -43,7 +49,10 @@ import org.codespeak.distribution.client.data.Program;
 import org.codespeak.distribution.client.objects.ClientException;
 import org.codespeak.distribution.client.data.query.QueryTypes;
 import org.codespeak.distribution.client.handler.BackendHandler;
+import org.codespeak.distribution.client.handler.JobHandler;
 import org.codespeak.distribution.client.objects.ClientUpdater;
+import org.codespeak.distribution.client.objects.DownloadListener;
+import org.codespeak.distribution.client.objects.Job;
 import org.codespeak.distribution.client.objects.ProgramTableData;
 import org.codespeak.distribution.client.objects.ProgramUpdater;
 import org.codespeak.distribution.client.objects.StageController;
@@ -61,6 +70,17 @@ import org.codespeak.distribution.client.util.StringUtil;
  */
 public class MainSceneController implements Initializable {
 
+    /**
+     * An interface for handling the result of a backend query on the JavaFX
+     * application thread
+     * @param <T> the type of data returned by the query
+     */
+    private interface QueryResultHandler<T> {
+
+        void handle(T result) throws ClientException, IOException;
+
+    }
+
     private Map<String, Category> categoryNamesMap = new HashMap<String, Category>();
     private Program currentlySelectedProgram;
     private Program currentlySelectedInstalledProgram;
@@ -121,7 +141,7 @@ public class MainSceneController implements Initializable {
                 }                
             } else {
                 currentlySelectedProgram = selectedProgram;
-                currentlySelectedInstalledProgram = selectedProgram;
+                currentlySelectedInstalledProgram = (selectedProgram.isInstalled() ? selectedProgram : null);
             }
             
             displayProgramControls(currentlySelectedProgram, currentlySelectedInstalledProgram);
@@ -133,6 +153,27 @@ public class MainSceneController implements Initializable {
         pb.start();
     }
     
+    private int findProgramRow(Program program) {
+        ObservableList<ProgramTableData> programItems = programsTable.getItems();
+        
+        for (int i = 0; i < programItems.size(); i++) {
+            if (programItems.get(i).getProgram() == program) {
+                return i;
+            }
+        }
+        
+        return -1;
+    }
+    
+    private void submitJob(Job job) {
+        try {
+            JobHandler.submit(job);
+        } catch (ClientException ex) {
+            Alert alert = ex.buildAlert();
+            alert.show();
+        }
+    }
+    
     private void displayPrograms(Category category) {
         List<Program> programs = DataHandler.getPrograms(category);
         ObservableList items = programsTable.getItems();
@@ -235,6 +276,48 @@ public class MainSceneController implements Initializable {
         categoryChoices.getSelectionModel().select(selectedCategoryValue);
     }    
 
+    /**
+     * Refreshes the categories and programs shown after the catalog has been
+     * updated. The selected category and program are kept if they still exist
+     */
+    public void refreshCatalog() {
+        Program previousProgram = (currentlySelectedInstalledProgram != null ? currentlySelectedInstalledProgram : currentlySelectedProgram);
+        String selectedCategoryValue = categoryChoices.getSelectionModel().getSelectedItem();
+        
+        if (Main.isOnline()) {
+            DataHandler.markDetachedPrograms();
+        }
+        
+        populateCategories();
+        
+        if (StringUtil.isNullOrEmpty(selectedCategoryValue) || !categoryNamesMap.containsKey(selectedCategoryValue)) {
+            selectedCategoryValue = "All";
+        }
+        
+        currentlySelectedProgram = null;
+        currentlySelectedInstalledProgram = null;
+        currentlySelectedProgramIndex = -1;
+        
+        displayPrograms(categoryNamesMap.get(selectedCategoryValue));
+        resetProgramControls();
+        
+        categoryChoices.getSelectionModel().select(selectedCategoryValue);
+        currentlySelectedCategoryIndex = categoryChoices.getSelectionModel().getSelectedIndex();
+        
+        if (previousProgram != null) {
+            ObservableList<ProgramTableData> programItems = programsTable.getItems();
+            
+            for (int i = 0; i < programItems.size(); i++) {
+                if (programItems.get(i).getProgram().getId() == previousProgram.getId()) {
+                    programsTable.getSelectionModel().select(i);
+                    selectProgram(i);
+                    
+                    break;
+                }
+            }
+        }
+    }
+    
     /**
      * Checks for newly added programs to the distribution system
      */
@@ -259,6 +342,49 @@ public class MainSceneController implements Initializable {
         }
     }
 
+    private static Throwable getQueryFailureCause(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+
+        return throwable;
+    }
+
+    /**
+     * Handles the result of a backend query on the JavaFX application thread
+     * once it completes. If the query failed, the error is shown and logged
+     * instead. A cancelled query is ignored
+     * @param <T> the type of data returned by the query
+     * @param future future of the query
+     * @param handler handler of the result of the query
+     */
+    private <T> void whenQueryComplete(CompletableFuture<T> future, QueryResultHandler<T> handler) {
+        future.whenComplete((T result, Throwable throwable) -> {
+            Platform.runLater(() -> {
+                try {
+                    if (throwable != null) {
+                        Throwable cause = getQueryFailureCause(throwable);
+
+                        if (cause instanceof CancellationException) {
+                            return;
+                        }
+
+                        throw ClientException.fromException((cause instanceof Exception) ? (Exception) cause : new Exception(cause));
+                    }
+
+                    handler.handle(result);
+                } catch (ClientException | IOException e) {
+                    ClientException ex = ClientException.fromException(e);
+
+                    Alert alert = ex.buildAlert();
+                    alert.show();
+
+                    Main.logError(ex);
+                }
+            });
+        });
+    }
+
     /**
      * Checks for client update
      * @param startup if this update is being called on program startup
@@ -276,19 +402,25 @@ public class MainSceneController implements Initializable {
         boolean checkClientUpdateOnStartup = settings.getValue(SettingFields.CHECK_CLIENT_UPDATE_ON_STARTUP);
         
         if (!startup || checkClientUpdateOnStartup) {
-            try {
-                ClientCheckVersionResponse response = BackendHandler.getDataFromQuery(QueryTypes.CHECK_CLIENT_VERSION, "&current_version=" + Configuration.PROGRAM_VERSION);
-
-                Instant requestReleaseTime = response.getRequestReleaseTime();
-                Instant releaseTime = response.getReleaseTime();
-                String version = response.getVersion();
-
-                if (releaseTime.isAfter(requestReleaseTime)) {
-                    List<ChangelogEntry> entries = BackendHandler.getDataFromQuery(QueryTypes.GET_CLIENT_CHANGELOG, "&since_version=" + Configuration.PROGRAM_VERSION);
+            CompletableFuture<Updater> updaterFuture = BackendHandler.getDataFromQueryAsync(QueryTypes.CHECK_CLIENT_VERSION, "&current_version=" + Configuration.PROGRAM_VERSION)
+                    .thenCompose((ClientCheckVersionResponse response) -> {
+                        Instant requestReleaseTime = response.getRequestReleaseTime();
+                        Instant releaseTime = response.getReleaseTime();
+                        String version = response.getVersion();
+
+                        if (!releaseTime.isAfter(requestReleaseTime)) {
+                            return CompletableFuture.completedFuture(null);
+                        }
+
+                        return BackendHandler.getDataFromQueryAsync(QueryTypes.GET_CLIENT_CHANGELOG, "&since_version=" + Configuration.PROGRAM_VERSION)
+                                .thenApply((List<ChangelogEntry> entries) -> new ClientUpdater(Configuration.PROGRAM_VERSION, version, entries));
+                    });
+
+            whenQueryComplete(updaterFuture, (Updater updater) -> {
+                if (updater != null) {
                     StageController<UpdateSceneController> stageController = SceneUtil.getScene(SceneTypes.UPDATE, "New verion for " + Configuration.PROGRAM_NAME);
                     Stage stage = stageController.getStage();
                     UpdateSceneController controller = stageController.getController();
-                    Updater updater = new ClientUpdater(Configuration.PROGRAM_VERSION, version, entries);
 
                     stage.show();
                     controller.showUpdate(updater);
@@ -297,44 +429,46 @@ public class MainSceneController implements Initializable {
                         Alert alert = AlertUtil.createAlert(AlertType.INFORMATION, "The client is on the latest version!");
                         alert.show();
                     }
-                }                
-            } catch (ClientException | IOException e) {
-                ClientException ex = ClientException.fromException(e);
-                
-                Alert alert = ex.buildAlert();
-                alert.show();
-
-                Main.logError(ex);
-            }
+                }
+            });
         }
     }
     
     /**
-     * Called when a program is updated
+     * Called when a program is updated. The files of the program are updated
+     * in the background
      * @param installedProgram an installed program
      * @param program the latest information on a program
      */
     public void onUpdateProgram(Program program, Program installedProgram) {
-        try {
-            boolean newDependencies = installedProgram.hasNewDependencies(program.getDependencies(), true);
-            
-            installedProgram.update(program);
+        String programName = installedProgram.getName();
+        boolean newDependencies = installedProgram.hasNewDependencies(program.getDependencies(), true);
         
+        Job job = new Job("Updating " + programName, installedProgram.getId(), (DownloadListener listener) -> {
+            installedProgram.update(program, listener);
+        }, () -> {
+            DataHandler.finishUpdateProgram(installedProgram, program);
+            
             ObservableList<ProgramTableData> programItems = programsTable.getItems();
-            ProgramTableData programData = programItems.get(currentlySelectedProgramIndex);
-
-            programData.setVersion(installedProgram.getVersion());
-            programData.setReleaseTime(installedProgram.getReleaseTime());
+            int programIndex = findProgramRow(installedProgram);
+            
+            if (programIndex > -1) {
+                ProgramTableData programData = programItems.get(programIndex);
 
-            programItems.set(currentlySelectedProgramIndex, programData);
+                programData.setVersion(installedProgram.getVersion());
+                programData.setReleaseTime(installedProgram.getReleaseTime());
 
-            displayProgramControls(program, installedProgram);
+                programItems.set(programIndex, programData);
+            }
+            
+            if (currentlySelectedInstalledProgram == installedProgram) {
+                displayProgramControls(program, installedProgram);
+            }
             
             if (newDependencies) {
                 Alert alert = AlertUtil.createAlert("This program has new dependencies. The dependencies window will now be shown.");
                 alert.showAndWait();
                 
-                String programName = installedProgram.getName();
                 StageController<ProgramDependenciesSceneController> stageController = SceneUtil.getScene(SceneTypes.PROGRAM_DEPENDENCIES, "Dependencies for " + programName);
                 Stage stage = stageController.getStage();
                 ProgramDependenciesSceneController controller = stageController.getController();
@@ -342,14 +476,9 @@ public class MainSceneController implements Initializable {
                 stage.show();
                 controller.showProgramDependencies(programName, installedProgram.getDependencies(true), installedProgram.getDirectory(true));
             }
-        } catch (ClientException | IOException e) {
-            ClientException ex = ClientException.fromException(e);
-            
-            Alert alert = ex.buildAlert();
-            alert.show();
-            
-            Main.logError(ex);
-        }
+        });
+        
+        submitJob(job);
     }
 
     @FXML
@@ -423,6 +552,25 @@ public class MainSceneController implements Initializable {
         }
     }
     
+    @FXML
+    public void onJobsMenuItemClick(ActionEvent event) {
+        try {
+            StageController<JobsSceneController> stageController = SceneUtil.getScene(new Stage(), SceneTypes.JOBS, "Jobs", false);
+            Stage stage = stageController.getStage();
+            JobsSceneController controller = stageController.getController();
+            
+            stage.show();
+            controller.showJobs(JobHandler.getJobs());
+        } catch (IOException e) {
+            ClientException ex = ClientException.fromException(e);
+
+            Alert alert = ex.buildAlert();
+            alert.show();
+            
+            Main.logError(ex);
+        }
+    }
+    
     @FXML
     public void onQuitMenuItemClick(ActionEvent event) {
         Platform.exit();
@@ -536,8 +684,7 @@ public class MainSceneController implements Initializable {
         }
     }
 
-    @FXML
-    public void onProgramRepairButtonClick() {
+    private void repairSelectedProgram(boolean deepVerify) {
         if (currentlySelectedInstalledProgram != null) {
             if (!Main.isOnline()) {
                 Alert alert = AlertUtil.createAlert("Unable to repair program at this time.");
@@ -575,19 +722,14 @@ public class MainSceneController implements Initializable {
             ButtonType buttonType = confirmAlert.showAndWait().get();
  
             if (buttonType == ButtonType.YES) {
-                try {
-                    currentlySelectedInstalledProgram.repair();
-
+                Program installedProgram = currentlySelectedInstalledProgram;
+                
+                submitJob(new Job("Repairing " + programName, installedProgram.getId(), (DownloadListener listener) -> {
+                    installedProgram.repair(deepVerify, listener);
+                }, () -> {
                     Alert alert = AlertUtil.createAlert(programName + " has been repaired.");
                     alert.show();
-                } catch (ClientException | IOException e) {
-                    ClientException ex = ClientException.fromException(e);
-
-                    Alert alert = ex.buildAlert();
-                    alert.show();
-                    
-                    Main.logError(ex);
-                }
+                }));
             }
         } else {
             Alert alert = AlertUtil.createAlert("Select an installed program first.");
@@ -595,6 +737,16 @@ public class MainSceneController implements Initializable {
         }
     }
     
+    @FXML
+    public void onProgramRepairButtonClick() {
+        repairSelectedProgram(false);
+    }
+    
+    @FXML
+    public void onProgramDeepRepairButtonClick() {
+        repairSelectedProgram(true);
+    }
+    
     @FXML
     public void onProgramViewChangelogButtonClick() {
         if (currentlySelectedProgram != null) {
@@ -624,22 +776,16 @@ public class MainSceneController implements Initializable {
                 name = currentlySelectedProgram.getName();
             }
 
-            try {
-                List<ChangelogEntry> entries = BackendHandler.getDataFromQuery(QueryTypes.GET_PROGRAM_CHANGELOG, "&id=" + id);
-                StageController<ChangelogSceneController> stageController = SceneUtil.getScene(SceneTypes.CHANGELOG, "Changelog for " + name);
+            String programName = name;
+
+            whenQueryComplete(BackendHandler.getDataFromQueryAsync(QueryTypes.GET_PROGRAM_CHANGELOG, "&id=" + id), (List<ChangelogEntry> entries) -> {
+                StageController<ChangelogSceneController> stageController = SceneUtil.getScene(SceneTypes.CHANGELOG, "Changelog for " + programName);
                 ChangelogSceneController controller = stageController.getController();
                 Stage stage = stageController.getStage();
 
                 stage.show();
-                controller.showChangelog(name, entries);
-            } catch (ClientException | IOException e) {
-                ClientException ex = ClientException.fromException(e);
-
-                Alert alert = ex.buildAlert();
-                alert.show();
-                
-                Main.logError(ex);
-            }
+                controller.showChangelog(programName, entries);
+            });
         } else {
             Alert alert = AlertUtil.createAlert("Select a program first.");
             alert.show();
@@ -655,22 +801,14 @@ public class MainSceneController implements Initializable {
             return;
         }
 
-        try {
-            List<ChangelogEntry> entries = BackendHandler.getDataFromQuery(QueryTypes.GET_CLIENT_CHANGELOG);
+        whenQueryComplete(BackendHandler.getDataFromQueryAsync(QueryTypes.GET_CLIENT_CHANGELOG), (List<ChangelogEntry> entries) -> {
             StageController<ChangelogSceneController> stageController = SceneUtil.getScene(SceneTypes.CHANGELOG, Configuration.PROGRAM_NAME + " Changelog");
             ChangelogSceneController controller = stageController.getController();
             Stage stage = stageController.getStage();
 
             stage.show();
             controller.showChangelog(Configuration.PROGRAM_NAME, entries);
-        } catch (ClientException | IOException e) {
-            ClientException ex = ClientException.fromException(e);
-
-            Alert alert = ex.buildAlert();
-            alert.show();
-            
-            Main.logError(ex);
-        }
+        });
     }
     
     @FXML
@@ -746,19 +884,24 @@ public class MainSceneController implements Initializable {
     @FXML
     public void onInstallButtonClick() {
         if (currentlySelectedProgram != null) {
-            String programName = currentlySelectedProgram.getName();
+            Program program = currentlySelectedProgram;
+            String programName = program.getName();
             
-            try {
-                DataHandler.installProgram(currentlySelectedProgram);
+            submitJob(new Job("Installing " + programName, program.getId(), (DownloadListener listener) -> {
+                program.install(listener);
+            }, () -> {
+                DataHandler.finishInstallProgram(program);
 
-                displayProgramControls(currentlySelectedProgram, currentlySelectedProgram);
+                if (currentlySelectedProgram == program) {
+                    displayProgramControls(program, program);
 
-                currentlySelectedInstalledProgram = currentlySelectedProgram;
+                    currentlySelectedInstalledProgram = program;
+                }
 
-                Map<Dependency, Long> dependencies = currentlySelectedInstalledProgram.getDependencies(true);
+                Map<Dependency, Long> dependencies = program.getDependencies(true);
                 
                 if (dependencies.size() > 0) {
-                    Path programLaunchFile = currentlySelectedInstalledProgram.getDirectory(true);
+                    Path programLaunchFile = program.getDirectory(true);
                     StageController<ProgramDependenciesSceneController> stageController = SceneUtil.getScene(SceneTypes.PROGRAM_DEPENDENCIES, "Dependencies for " + programName);
                     ProgramDependenciesSceneController controller = stageController.getController();
                     Stage stage = stageController.getStage();
@@ -766,14 +909,7 @@ public class MainSceneController implements Initializable {
                     stage.show();
                     controller.showProgramDependencies(programName, dependencies, programLaunchFile);
                 }
-            } catch (ClientException | IOException e) {
-                ClientException ex = ClientException.fromException(e);
-
-                Alert alert = ex.buildAlert();
-                alert.show();
-                
-                Main.logError(ex);
-            }
+            }));
         }
     }
     
@@ -781,28 +917,128 @@ public class MainSceneController implements Initializable {
     public void onUpdateButtonClick() {
         if (currentlySelectedInstalledProgram != null) {
             String programName = currentlySelectedInstalledProgram.getName();
-
-            try {
-                int id = currentlySelectedInstalledProgram.getId();
-                String version = currentlySelectedInstalledProgram.getVersion();
-                List<ChangelogEntry> entries = BackendHandler.getDataFromQuery(QueryTypes.GET_PROGRAM_CHANGELOG, "&id=" + id + "&since_version=" + version);
-
+            int id = currentlySelectedInstalledProgram.getId();
+            String version = currentlySelectedInstalledProgram.getVersion();
+            // The selection may change before the changelog arrives
+            Program program = currentlySelectedProgram;
+            Program installedProgram = currentlySelectedInstalledProgram;
+            CompletableFuture<List<ChangelogEntry>> entriesFuture = BackendHandler.getDataFromQueryAsync(QueryTypes.GET_PROGRAM_CHANGELOG, "&id=" + id + "&since_version=" + version);
+
+            whenQueryComplete(entriesFuture, (List<ChangelogEntry> entries) -> {
                 StageController<UpdateSceneController> stageController = SceneUtil.getScene(SceneTypes.UPDATE, "New version for " + programName);
                 UpdateSceneController controller = stageController.getController();
                 Stage stage = stageController.getStage();
-                Updater updater = new ProgramUpdater(currentlySelectedProgram, currentlySelectedInstalledProgram, this, entries);
+                Updater updater = new ProgramUpdater(program, installedProgram, this, entries);
 
                 stage.show();
                 controller.showUpdate(updater);
-            } catch (ClientException | IOException e) {
-                ClientException ex = ClientException.fromException(e);
+            });
+        }
+    }
+    
+    @FXML
+    public void onUpdateAllMenuItemClick() {
+        if (!Main.isOnline()) {
+            Alert alert = AlertUtil.createAlert("Unable to update programs at this time.");
+            alert.show();
+
+            return;
+        }
+        
+        List<Program> outdatedPrograms = new ArrayList<Program>();
+        
+        for (Program installedProgram : DataHandler.getOutdatedPrograms()) {
+            if (!JobHandler.hasActiveJob(installedProgram.getId())) {
+                outdatedPrograms.add(installedProgram);
+            }
+        }
+        
+        if (outdatedPrograms.isEmpty()) {
+            Alert alert = AlertUtil.createAlert(AlertType.INFORMATION, "All installed programs are on the latest version!");
+            alert.show();
+            
+            return;
+        }
+        
+        // The changelogs of every program are fetched at the same time
+        List<CompletableFuture<List<ChangelogEntry>>> changelogFutures = new ArrayList<CompletableFuture<List<ChangelogEntry>>>();
+        
+        for (Program installedProgram : outdatedPrograms) {
+            String query = "&id=" + installedProgram.getId() + "&since_version=" + installedProgram.getVersion();
+            
+            changelogFutures.add(BackendHandler.getDataFromQueryAsync(QueryTypes.GET_PROGRAM_CHANGELOG, query));
+        }
+        
+        // A changelog that could not be fetched is noted in the dialog, so it
+        // does not keep the other programs from being updated
+        CompletableFuture<?>[] settledChangelogs = new CompletableFuture<?>[changelogFutures.size()];
+        
+        for (int i = 0; i < settledChangelogs.length; i++) {
+            settledChangelogs[i] = changelogFutures.get(i).handle((List<ChangelogEntry> entries, Throwable throwable) -> null);
+        }
+        
+        CompletableFuture<Void> allChangelogs = CompletableFuture.allOf(settledChangelogs);
+        
+        whenQueryComplete(allChangelogs, (Void result) -> {
+            Map<Program, Program> updates = new LinkedHashMap<Program, Program>();
+            StringBuilder sb = new StringBuilder();
+            
+            for (int i = 0; i < outdatedPrograms.size(); i++) {
+                Program installedProgram = outdatedPrograms.get(i);
+                Program program = DataHandler.getProgram(installedProgram.getId(), false);
                 
-                Alert alert = ex.buildAlert();
-                alert.show();
+                if (program == null) {
+                    continue;
+                }
                 
-                Main.logError(ex);
+                updates.put(installedProgram, program);
+                
+                if (sb.length() > 0) {
+                    sb.append("\n\n");
+                }
+                
+                sb.append(installedProgram.getName()).append(": version ").append(installedProgram.getVersion())
+                  .append(" to ").append(program.getVersion());
+                
+                CompletableFuture<List<ChangelogEntry>> changelogFuture = changelogFutures.get(i);
+                
+                if (changelogFuture.isCompletedExceptionally()) {
+                    Throwable cause = getQueryFailureCause(changelogFuture.handle((List<ChangelogEntry> entries, Throwable throwable) -> throwable).join());
+                    
+                    if (!(cause instanceof CancellationException)) {
+                        Main.logError(ClientException.fromException((cause instanceof Exception) ? (Exception) cause : new Exception(cause)));
+                    }
+                    
+                    sb.append("\n\nThe changelog of this program could not be loaded.");
+                    
+                    continue;
+                }
+                
+                for (ChangelogEntry entry : changelogFuture.join()) {
+                    String formattedReleaseTime = DateUtil.formatInstant(entry.getReleaseTime());
+                    
+                    sb.append("\n\nVersion ").append(entry.getVersion()).append(" - Released on ").append(formattedReleaseTime)
+                      .append("\n\n").append(entry.getContent());
+                }
             }
-        }
+            
+            Alert confirmAlert = AlertUtil.createAlert(AlertType.CONFIRMATION, updates.size() + " installed programs have a new "
+                    + "version available. Do you want to update all of them?", "Update All Programs");
+            TextArea changesText = new TextArea(sb.toString());
+            
+            changesText.setEditable(false);
+            changesText.setWrapText(true);
+            confirmAlert.getDialogPane().setExpandableContent(changesText);
+            confirmAlert.getButtonTypes().setAll(ButtonType.YES, ButtonType.NO);
+            
+            ButtonType buttonType = confirmAlert.showAndWait().get();
+            
+            if (buttonType == ButtonType.YES) {
+                for (Map.Entry<Program, Program> update : updates.entrySet()) {
+                    onUpdateProgram(update.getValue(), update.getKey());
+                }
+            }
+        });
     }
     
     @FXML
@@ -819,13 +1055,19 @@ public class MainSceneController implements Initializable {
             ButtonType buttonType = alert.showAndWait().get();
 
             if (buttonType == ButtonType.YES) {
-                try {
-                    DataHandler.uninstallProgram(currentlySelectedInstalledProgram);
+                Program installedProgram = currentlySelectedInstalledProgram;
+                
+                submitJob(new Job("Uninstalling " + programName, installedProgram.getId(), (DownloadListener listener) -> {
+                    installedProgram.uninstall();
+                }, () -> {
+                    DataHandler.finishUninstallProgram(installedProgram);
 
-                    if (Main.isOnline() && !currentlySelectedInstalledProgram.isDetached()) {
-                        currentlySelectedInstalledProgram = null;
+                    if (Main.isOnline() && !installedProgram.isDetached()) {
+                        if (currentlySelectedInstalledProgram == installedProgram) {
+                            currentlySelectedInstalledProgram = null;
 
-                        displayProgramControls(currentlySelectedProgram, null);
+                            displayProgramControls(currentlySelectedProgram, null);
+                        }
                     } else {
                         currentlySelectedProgram = null;
                         currentlySelectedInstalledProgram = null;
@@ -841,14 +1083,7 @@ public class MainSceneController implements Initializable {
 
                     Alert uninstallAlert = AlertUtil.createAlert(programName + " has been uninstalled.");
                     uninstallAlert.show();
-                } catch (IOException e) {
-                    ClientException ex = ClientException.fromException(e);
-
-                    alert = ex.buildAlert();
-                    alert.show();
-
-                    Main.logError(ex);
-                }
+                }));
             }
         } else {
             Alert alert = AlertUtil.createAlert("Select an installed program first.");
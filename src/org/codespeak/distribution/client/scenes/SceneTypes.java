@@ -12,7 +12,8 @@ public enum SceneTypes {
     CHANGELOG("ChangelogScene.fxml"),
     UPDATE("UpdateScene.fxml"),
     PROGRAM_DEPENDENCIES("ProgramDependenciesScene.fxml"),
-    SETTINGS("SettingsScene.fxml");
+    SETTINGS("SettingsScene.fxml"),
+    JOBS("JobsScene.fxml");
     
     private final String fxmlName;
     
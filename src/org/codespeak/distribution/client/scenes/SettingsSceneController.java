@@ -27,6 +27,7 @@ public class SettingsSceneController implements Initializable {
     @FXML private CheckBox notifyOfNewPrograms;
     @FXML private CheckBox checkClientUpdateOnStartupCheck;
     @FXML private CheckBox backupBeforeRemovingTextFilesCheck;
+    @FXML private CheckBox binaryDataSnapshotCheck;
     
     @Override
     public void initialize(URL url, ResourceBundle rb) {
@@ -37,6 +38,7 @@ public class SettingsSceneController implements Initializable {
         notifyOfNewPrograms.setSelected(settings.getValue(SettingFields.NOTIFY_OF_NEW_PROGRAMS));
         checkClientUpdateOnStartupCheck.setSelected(settings.getValue(SettingFields.CHECK_CLIENT_UPDATE_ON_STARTUP));
         backupBeforeRemovingTextFilesCheck.setSelected(settings.getValue(SettingFields.BACKUP_BEFORE_REMOVING_TEXT_FILES));
+        binaryDataSnapshotCheck.setSelected(settings.getValue(SettingFields.BINARY_DATA_SNAPSHOT));
     }
     
     @FXML
@@ -45,6 +47,7 @@ public class SettingsSceneController implements Initializable {
         settings.setValue(SettingFields.NOTIFY_OF_NEW_PROGRAMS, notifyOfNewPrograms.isSelected());
         settings.setValue(SettingFields.CHECK_CLIENT_UPDATE_ON_STARTUP, checkClientUpdateOnStartupCheck.isSelected());
         settings.setValue(SettingFields.BACKUP_BEFORE_REMOVING_TEXT_FILES, backupBeforeRemovingTextFilesCheck.isSelected());        
+        settings.setValue(SettingFields.BINARY_DATA_SNAPSHOT, binaryDataSnapshotCheck.isSelected());
         
         Stage stage = (Stage) ((Node) event.getSource()).getScene().getWindow();
         stage.close();
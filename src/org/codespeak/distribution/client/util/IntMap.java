@@ -0,0 +1,224 @@
+package org.codespeak.distribution.client.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A hash map using primitive int keys. Entries are stored using open
+ * addressing with linear probing so lookups do not box their keys
+ *
+ * @author Vector
+ */
+public class IntMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int mask;
+    private int size = 0;
+
+    public IntMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntMap(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slotOf(int key) {
+        int hash = key * 0x9E3779B9;
+
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    // Only values of type V are ever stored in the array of values
+    @SuppressWarnings("unchecked")
+    private V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    private int findSlot(int key) {
+        int slot = slotOf(key);
+
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        allocate(keys.length * 2);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slotOf(oldKeys[i]);
+
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Gets the value mapped to the specified key
+     * @param key the key to look up
+     * @return value mapped to the key, or null if there is none
+     */
+    public V get(int key) {
+        int slot = findSlot(key);
+
+        return (slot > -1 ? valueAt(slot) : null);
+    }
+
+    /**
+     * Checks if a value is mapped to the specified key
+     * @param key the key to check
+     * @return if a value is mapped to the key
+     */
+    public boolean containsKey(int key) {
+        return (findSlot(key) > -1);
+    }
+
+    /**
+     * Maps a value to the specified key
+     * @param key the key to map the value to
+     * @param value the value to map. Null values are not allowed
+     * @return the value previously mapped to the key, or null if there was none
+     */
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not allowed.");
+        }
+
+        int slot = slotOf(key);
+
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                V oldValue = valueAt(slot);
+                values[slot] = value;
+
+                return oldValue;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+
+        if (size * 2 > keys.length) {
+            resize();
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes the value mapped to the specified key
+     * @param key the key to remove
+     * @return the value that was mapped to the key, or null if there was none
+     */
+    public V remove(int key) {
+        int slot = findSlot(key);
+
+        if (slot == -1) {
+            return null;
+        }
+
+        V oldValue = valueAt(slot);
+        values[slot] = null;
+        size--;
+
+        // Shift the following entries back so that no lookup stops early at
+        // the slot that was just emptied
+        int next = slot;
+
+        while (true) {
+            next = (next + 1) & mask;
+
+            if (values[next] == null) {
+                break;
+            }
+
+            int ideal = slotOf(keys[next]);
+            boolean canMove = (next > slot ? (ideal <= slot || ideal > next) : (ideal <= slot && ideal > next));
+
+            if (canMove) {
+                keys[slot] = keys[next];
+                values[slot] = values[next];
+                values[next] = null;
+                slot = next;
+            }
+        }
+
+        return oldValue;
+    }
+
+    /**
+     * Gets the number of entries in this map
+     * @return number of entries in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if this map is empty
+     * @return if this map is empty
+     */
+    public boolean isEmpty() {
+        return (size == 0);
+    }
+
+    /**
+     * Removes all entries from this map
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Gets a list of the values in this map in no particular order
+     * @return list of the values in this map
+     */
+    public List<V> values() {
+        List<V> ret = new ArrayList<V>(size);
+
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                ret.add(valueAt(i));
+            }
+        }
+
+        return ret;
+    }
+
+}
@@ -0,0 +1,639 @@
+package org.codespeak.distribution.client.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A class that reads a JSON document one token at a time. Values are read
+ * straight from the underlying reader, so a document can be converted to
+ * objects without first building a String or a JSONObject from it
+ *
+ * @author Vector
+ */
+public class JsonReader implements Closeable {
+
+    /**
+     * An enum containing the kinds of tokens in a JSON document
+     */
+    public enum Token {
+        BEGIN_OBJECT,
+        END_OBJECT,
+        BEGIN_ARRAY,
+        END_ARRAY,
+        NAME,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder builder = new StringBuilder();
+    private int position = 0;
+    private int limit = 0;
+    private long consumed = 0;
+
+    private int[] scopes = new int[32];
+    private int scopeCount = 0;
+    private Token peeked = null;
+
+    public JsonReader(Reader in) {
+        this.in = in;
+
+        pushScope(EMPTY_DOCUMENT);
+    }
+
+    private void pushScope(int scope) {
+        if (scopeCount == scopes.length) {
+            int[] newScopes = new int[scopes.length * 2];
+            System.arraycopy(scopes, 0, newScopes, 0, scopeCount);
+            scopes = newScopes;
+        }
+
+        scopes[scopeCount++] = scope;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at character " + (consumed + position) + ".");
+    }
+
+    private boolean fill() throws IOException {
+        consumed += limit;
+        position = 0;
+        limit = 0;
+
+        int count = in.read(buffer, 0, buffer.length);
+
+        if (count <= 0) {
+            return false;
+        }
+
+        limit = count;
+
+        return true;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (position < limit || fill()) {
+            char c = buffer[position++];
+
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+
+        return -1;
+    }
+
+    private Token peekValue() throws IOException {
+        int c = nextNonWhitespace();
+
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+            case 'f':
+                position--;
+
+                return Token.BOOLEAN;
+            case 'n':
+                position--;
+
+                return Token.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of document");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    position--;
+
+                    return Token.NUMBER;
+                }
+
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private Token doPeek() throws IOException {
+        if (scopeCount == 0) {
+            throw new IllegalStateException("Reader is closed.");
+        }
+
+        int scope = scopes[scopeCount - 1];
+        int c;
+
+        switch (scope) {
+            case EMPTY_DOCUMENT:
+                scopes[scopeCount - 1] = NONEMPTY_DOCUMENT;
+
+                return peekValue();
+            case NONEMPTY_DOCUMENT:
+                if (nextNonWhitespace() != -1) {
+                    throw syntaxError("Expected end of document");
+                }
+
+                return Token.END_DOCUMENT;
+            case EMPTY_ARRAY:
+                scopes[scopeCount - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+
+                if (c == ']') {
+                    return Token.END_ARRAY;
+                } else if (c == -1) {
+                    throw syntaxError("Unexpected end of document");
+                }
+
+                position--;
+
+                return peekValue();
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+
+                if (c == ']') {
+                    return Token.END_ARRAY;
+                } else if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+
+                return peekValue();
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                scopes[scopeCount - 1] = DANGLING_NAME;
+                c = nextNonWhitespace();
+
+                if (c == '}') {
+                    return Token.END_OBJECT;
+                }
+
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+
+                    c = nextNonWhitespace();
+                }
+
+                if (c != '"') {
+                    throw syntaxError("Expected a name");
+                }
+
+                return Token.NAME;
+            case DANGLING_NAME:
+                scopes[scopeCount - 1] = NONEMPTY_OBJECT;
+
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+
+                return peekValue();
+            default:
+                throw new IllegalStateException("Unknown scope: " + scope);
+        }
+    }
+
+    private void expect(Token token) throws IOException {
+        Token actual = peek();
+
+        if (actual != token) {
+            throw syntaxError("Expected " + token + " but found " + actual);
+        }
+
+        peeked = null;
+    }
+
+    private int readChar() throws IOException {
+        if (position == limit && !fill()) {
+            throw syntaxError("Unexpected end of document");
+        }
+
+        return buffer[position++];
+    }
+
+    private String readQuotedString() throws IOException {
+        builder.setLength(0);
+
+        while (true) {
+            int start = position;
+
+            // Characters without escapes are copied from the buffer in runs
+            while (position < limit) {
+                char c = buffer[position];
+
+                if (c == '"') {
+                    builder.append(buffer, start, position - start);
+                    position++;
+
+                    return builder.toString();
+                } else if (c == '\\') {
+                    builder.append(buffer, start, position - start);
+                    position++;
+                    builder.append(readEscape());
+                    start = position;
+                } else {
+                    position++;
+                }
+            }
+
+            builder.append(buffer, start, position - start);
+
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = readChar();
+
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(readChar(), 16);
+
+                    if (digit == -1) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+
+                    value = (value << 4) | digit;
+                }
+
+                return (char) value;
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    private String readUnquoted() throws IOException {
+        builder.setLength(0);
+
+        while (position < limit || fill()) {
+            char c = buffer[position];
+
+            if ((c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || c == '-' || c == '+' || c == '.') {
+                builder.append(c);
+                position++;
+            } else {
+                break;
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Gets the kind of the next token without consuming it
+     * @return kind of the next token
+     * @throws IOException thrown if the document is malformed
+     */
+    public Token peek() throws IOException {
+        if (peeked == null) {
+            peeked = doPeek();
+        }
+
+        return peeked;
+    }
+
+    /**
+     * Checks if the current object or array has another element
+     * @return if the current object or array has another element
+     * @throws IOException thrown if the document is malformed
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+
+        return (token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT);
+    }
+
+    /**
+     * Consumes the start of an object
+     * @throws IOException thrown if the next token is not the start of an
+     * object
+     */
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        pushScope(EMPTY_OBJECT);
+    }
+
+    /**
+     * Consumes the end of an object
+     * @throws IOException thrown if the next token is not the end of an
+     * object
+     */
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        scopeCount--;
+    }
+
+    /**
+     * Consumes the start of an array
+     * @throws IOException thrown if the next token is not the start of an
+     * array
+     */
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        pushScope(EMPTY_ARRAY);
+    }
+
+    /**
+     * Consumes the end of an array
+     * @throws IOException thrown if the next token is not the end of an array
+     */
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        scopeCount--;
+    }
+
+    /**
+     * Consumes the name of the next property of an object
+     * @return name of the property
+     * @throws IOException thrown if the next token is not a name
+     */
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+
+        return readQuotedString();
+    }
+
+    /**
+     * Consumes a string value. A number is returned as it was written
+     * @return the string value
+     * @throws IOException thrown if the next token is not a string or number
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+
+        if (token == Token.STRING) {
+            peeked = null;
+
+            return readQuotedString();
+        } else if (token == Token.NUMBER) {
+            peeked = null;
+
+            return readUnquoted();
+        }
+
+        throw syntaxError("Expected a string but found " + token);
+    }
+
+    /**
+     * Consumes a number value as a long. A string containing a number is also
+     * accepted
+     * @return the number value
+     * @throws IOException thrown if the next token is not a number
+     */
+    public long nextLong() throws IOException {
+        Token token = peek();
+
+        if (token != Token.NUMBER && token != Token.STRING) {
+            throw syntaxError("Expected a number but found " + token);
+        }
+
+        String value = nextString();
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            try {
+                return (long) Double.parseDouble(value);
+            } catch (NumberFormatException ex2) {
+                throw syntaxError("Expected a number but found \"" + value + "\"");
+            }
+        }
+    }
+
+    /**
+     * Consumes a number value as an int. A string containing a number is also
+     * accepted
+     * @return the number value
+     * @throws IOException thrown if the next token is not a number
+     */
+    public int nextInt() throws IOException {
+        return (int) nextLong();
+    }
+
+    /**
+     * Consumes a boolean value
+     * @return the boolean value
+     * @throws IOException thrown if the next token is not a boolean
+     */
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+
+        String value = readUnquoted();
+
+        if (value.equals("true")) {
+            return true;
+        } else if (value.equals("false")) {
+            return false;
+        }
+
+        throw syntaxError("Unexpected value \"" + value + "\"");
+    }
+
+    /**
+     * Consumes a null value
+     * @throws IOException thrown if the next token is not null
+     */
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+
+        if (!readUnquoted().equals("null")) {
+            throw syntaxError("Expected null");
+        }
+    }
+
+    /**
+     * Consumes the next value, including every value nested within it
+     * @throws IOException thrown if the document is malformed
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+
+                    break;
+                case NAME:
+                    nextName();
+
+                    break;
+                case BOOLEAN:
+                    nextBoolean();
+
+                    break;
+                case NULL:
+                    nextNull();
+
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of document");
+                default:
+                    nextString();
+
+                    break;
+            }
+        } while (depth > 0);
+    }
+
+    private static void appendSeparator(StringBuilder json) {
+        if (json.length() == 0) {
+            return;
+        }
+
+        char last = json.charAt(json.length() - 1);
+
+        if (last != '[' && last != '{' && last != ':') {
+            json.append(',');
+        }
+    }
+
+    private static void appendQuoted(StringBuilder json, String value) {
+        json.append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+
+        json.append('"');
+    }
+
+    /**
+     * Consumes the next value, including every value nested within it, and
+     * gets it as JSON text so it can be read again later with a new reader
+     * @return the value as JSON text
+     * @throws IOException thrown if the document is malformed
+     */
+    public String nextValueAsJson() throws IOException {
+        StringBuilder json = new StringBuilder();
+        int depth = 0;
+
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    appendSeparator(json);
+                    json.append('{');
+                    depth++;
+
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    appendSeparator(json);
+                    json.append('[');
+                    depth++;
+
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    json.append('}');
+                    depth--;
+
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    json.append(']');
+                    depth--;
+
+                    break;
+                case NAME:
+                    appendSeparator(json);
+                    appendQuoted(json, nextName());
+                    json.append(':');
+
+                    break;
+                case STRING:
+                    appendSeparator(json);
+                    appendQuoted(json, nextString());
+
+                    break;
+                case BOOLEAN:
+                    appendSeparator(json);
+                    json.append(nextBoolean());
+
+                    break;
+                case NULL:
+                    nextNull();
+                    appendSeparator(json);
+                    json.append("null");
+
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of document");
+                default:
+                    appendSeparator(json);
+                    json.append(nextString());
+
+                    break;
+            }
+        } while (depth > 0);
+
+        return json.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        scopeCount = 0;
+        peeked = null;
+        in.close();
+    }
+
+}
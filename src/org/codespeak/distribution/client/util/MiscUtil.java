@@ -2,8 +2,10 @@ package org.codespeak.distribution.client.util;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -17,27 +19,46 @@ import javax.xml.bind.DatatypeConverter;
  */
 public class MiscUtil {
 
-    private static MessageDigest messageDigest = null;
+    private static final int CHECKSUM_BUFFER_SIZE = 64 * 1024;
+    
+    // Each thread gets its own digest and buffer so files can be hashed
+    // concurrently
+    private static final ThreadLocal<MessageDigest> messageDigest = new ThreadLocal<MessageDigest>();
+    private static final ThreadLocal<ByteBuffer> checksumBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(CHECKSUM_BUFFER_SIZE));
     
     private static MessageDigest getMessageDigest() throws NoSuchAlgorithmException {
-        if (messageDigest == null) {
-            messageDigest = MessageDigest.getInstance("MD5");
+        MessageDigest digest = messageDigest.get();
+        
+        if (digest == null) {
+            digest = MessageDigest.getInstance("MD5");
+            messageDigest.set(digest);
         }
         
-        return messageDigest;
+        return digest;
     }
 
     /**
-     * Gets the checksum of the specified path
+     * Gets the checksum of the specified path. The file is read in small
+     * chunks so memory use does not depend on the size of the file. This
+     * method may be called from several threads at once
      * @param path path to file
      * @return checksum of the file as specified path
      */
     public static String getFileChecksum(Path path) {
-        try {
-            MessageDigest messageDigest = getMessageDigest();
-            messageDigest.update(Files.readAllBytes(path));
-            byte[] checksumBytes = messageDigest.digest();
-            messageDigest.reset();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MessageDigest digest = getMessageDigest();
+            ByteBuffer buffer = checksumBuffer.get();
+            
+            digest.reset();
+            buffer.clear();
+            
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            
+            byte[] checksumBytes = digest.digest();
             
             return DatatypeConverter.printHexBinary(checksumBytes);
         } catch (IOException | NoSuchAlgorithmException ex) {
@@ -98,16 +119,23 @@ public class MiscUtil {
      * @return if the specified file is a non-empty text file
      */
     public static boolean isNonEmptyTextFile(Path programFilePath) {
-        if (programFilePath.toFile().length() > 0) {
-            String filename = programFilePath.getFileName().toString();
-            int lastIndex = filename.lastIndexOf(".");
-            
-            if (lastIndex > -1) {
-                String ext = filename.substring(lastIndex + 1).toLowerCase();
+        return (programFilePath.toFile().length() > 0 && isTextFile(programFilePath));
+    }
+    
+    /**
+     * Checks if the specified file is a text file, which users may edit
+     * @param programFilePath the path to the program file being checked
+     * @return if the specified file is a text file
+     */
+    public static boolean isTextFile(Path programFilePath) {
+        String filename = programFilePath.getFileName().toString();
+        int lastIndex = filename.lastIndexOf(".");
 
-                return (ext.equals("txt") || ext.equals("log") || ext.equals("ini")
-                        || ext.equals("rtf"));                            
-            }
+        if (lastIndex > -1) {
+            String ext = filename.substring(lastIndex + 1).toLowerCase();
+
+            return (ext.equals("txt") || ext.equals("log") || ext.equals("ini")
+                    || ext.equals("rtf"));
         }
 
         return false;